@@ -0,0 +1,428 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Ordered dictionary stored as a struct of arrays instead of BSTNode objects.
+ * A node is an int handle into parallel arrays (left, right, parent, priority,
+ * media) and the key storage; handle 0 (NIL) plays the part of the leaf. Per key
+ * the tree itself costs four ints and a reference instead of a 40-byte object,
+ * and there are no node objects for the GC to trace.
+ *
+ * The tree is a treap: each node gets a random priority and parents always have
+ * a higher priority than their children, which keeps the expected depth
+ * logarithmic whatever the insertion order. Removed nodes are put on a free list
+ * (linked through left[]) and their handles reused by later inserts.
+ *
+ * Keys and media lists are kept through the protected storage hooks below, so a
+ * subclass can keep them somewhere other than a String[] and an array of lists;
+ * resetStorage is first called from this class's constructor. Data objects are
+ * built on demand for results and hold a copy of the media list; get returns the
+ * dictionary's own list, as BSTOrderedDictionary does.
+ */
+public class ArrayOrderedDictionary implements OrderedDictionary {
+
+    protected static final int NIL = 0; // Handle of the (single, implicit) leaf
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] left;
+    private int[] right;
+    private int[] parent;
+    private int[] priority;
+    private String[] keys;         // Default storage: key per handle
+    private Object[] media;        // Default storage: ArrayList<MultimediaItem> per handle
+
+    private int root = NIL;
+    private int used = 1;          // Handles below this have been handed out (0 is NIL)
+    private int freeHead = NIL;    // First recycled handle, or NIL
+    private int numKeys = 0;
+    private Random random = new Random();
+
+    public ArrayOrderedDictionary() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public int size() {
+        return numKeys;
+    }
+
+    // Number of handles the arrays can hold before they grow
+    public int capacity() {
+        return left.length;
+    }
+
+    public ArrayList<MultimediaItem> get(String key) {
+        int n = find(key);
+        return (n == NIL) ? null : mediaAt(n);
+    }
+
+    public void put(String key, String content, int type) {
+        int p = NIL;
+        int n = root;
+        int cmp = 0;
+        while (n != NIL) {
+            cmp = compareKey(key, n);
+            if (cmp == 0) {
+                addMedia(n, new MultimediaItem(content, type)); // Key exists, just add the media item
+                return;
+            }
+            p = n;
+            n = (cmp < 0) ? left[n] : right[n];
+        }
+
+        ArrayList<MultimediaItem> items = new ArrayList<MultimediaItem>(1); // Most keys have a single item
+        items.add(new MultimediaItem(content, type));
+        n = newNode(key, items, random.nextInt(Integer.MAX_VALUE));
+        parent[n] = p;
+        if (p == NIL) root = n;
+        else if (cmp < 0) left[p] = n;
+        else right[p] = n;
+
+        // Rotate the new node up until its parent outranks it
+        while (parent[n] != NIL && priority[parent[n]] < priority[n]) rotateUp(n);
+        numKeys++;
+    }
+
+    public void remove(String key) throws DictionaryException {
+        int n = find(key);
+        if (n == NIL) throw new DictionaryException("Key not found.");
+
+        // Rotate n down below its higher-priority child until it has at most one child
+        while (left[n] != NIL && right[n] != NIL) {
+            rotateUp(priority[left[n]] > priority[right[n]] ? left[n] : right[n]);
+        }
+
+        int child = (left[n] != NIL) ? left[n] : right[n];
+        int p = parent[n];
+        if (child != NIL) parent[child] = p;
+        if (p == NIL) root = child;
+        else if (left[p] == n) left[p] = child;
+        else right[p] = child;
+
+        freeNode(n);
+        numKeys--;
+    }
+
+    // Remove the media of the given type from key, and key itself if nothing remains
+    public void remove(String key, int type) throws DictionaryException {
+        int n = find(key);
+        if (n == NIL) throw new DictionaryException("Key not found.");
+
+        if (removeMedia(n, type) == 0) remove(key); // Nothing left under key
+    }
+
+    public Data successor(String key) {
+        int result = NIL;
+        int n = root;
+        while (n != NIL) {
+            if (compareKey(key, n) < 0) {
+                result = n; // Potential successor
+                n = left[n];
+            } else {
+                n = right[n];
+            }
+        }
+        return dataAt(result);
+    }
+
+    public Data predecessor(String key) {
+        int result = NIL;
+        int n = root;
+        while (n != NIL) {
+            if (compareKey(key, n) > 0) {
+                result = n; // Potential predecessor
+                n = right[n];
+            } else {
+                n = left[n];
+            }
+        }
+        return dataAt(result);
+    }
+
+    public Data smallest() {
+        return dataAt(leftmost(root));
+    }
+
+    public Data largest() {
+        return dataAt(rightmost(root));
+    }
+
+    // Seek to the first key >= key, then step along parent links
+    public ArrayList<Data> ascendingFrom(String key, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        int n = ceiling(key);
+        while (n != NIL && result.size() < count) {
+            result.add(dataAt(n));
+            n = next(n);
+        }
+        return result;
+    }
+
+    // Seek to the last key <= key, then step back along parent links
+    public ArrayList<Data> descendingFrom(String key, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        int n = floor(key);
+        while (n != NIL && result.size() < count) {
+            result.add(dataAt(n));
+            n = previous(n);
+        }
+        return result;
+    }
+
+    // Replace the contents with a perfectly balanced tree in O(n). Priorities fall
+    // with depth, so the result is a valid treap for later inserts and removes.
+    public void buildFromSorted(ArrayList<Data> sorted) {
+        int n = sorted.size();
+        allocate(Math.max(INITIAL_CAPACITY, n + 1));
+        root = build(sorted, 0, n - 1, NIL, 0);
+        numKeys = n;
+    }
+
+    // True if keys are in order, priorities form a heap and parent links match
+    public boolean isValid() {
+        if (root != NIL && parent[root] != NIL) return false;
+        return check(root, null, null) == numKeys;
+    }
+
+    /* Storage hooks: the key and media list of each handle. */
+
+    // Drop everything stored and make room for handles below capacity
+    protected void resetStorage(int capacity) {
+        keys = new String[capacity];
+        media = new Object[capacity];
+    }
+
+    // Make room for handles below capacity, keeping what handles below used hold
+    protected void growStorage(int capacity, int used) {
+        keys = Arrays.copyOf(keys, capacity);
+        media = Arrays.copyOf(media, capacity);
+    }
+
+    // Store key and its media list for a new node; the list is the dictionary's from now on
+    protected void store(int node, String key, ArrayList<MultimediaItem> items) {
+        keys[node] = key;
+        media[node] = items;
+    }
+
+    protected String keyAt(int node) {
+        return keys[node];
+    }
+
+    // key.compareTo(key of node)
+    protected int compareKey(String key, int node) {
+        return key.compareTo(keys[node]);
+    }
+
+    // Media list of node; changes to it are changes to the dictionary
+    @SuppressWarnings("unchecked")
+    protected ArrayList<MultimediaItem> mediaAt(int node) {
+        return (ArrayList<MultimediaItem>) media[node];
+    }
+
+    protected void addMedia(int node, MultimediaItem item) {
+        mediaAt(node).add(item);
+    }
+
+    // Remove the items of the given type; returns how many items are left
+    protected int removeMedia(int node, int type) {
+        ArrayList<MultimediaItem> list = mediaAt(node);
+        list.removeIf(item -> item.getType() == type);
+        return list.size();
+    }
+
+    // Called when node is freed
+    protected void release(int node) {
+        keys[node] = null;
+        media[node] = null;
+    }
+
+    /* In-order walk over the handles, for subclasses that rework their storage */
+
+    // Handle of the smallest key, or NIL when empty
+    protected int firstNode() {
+        return leftmost(root);
+    }
+
+    // Handle of the key after node's, or NIL after the largest
+    protected int nextNode(int node) {
+        return next(node);
+    }
+
+    /* Internals */
+
+    // Discard everything and size the arrays for capacity handles
+    private void allocate(int capacity) {
+        left = new int[capacity];
+        right = new int[capacity];
+        parent = new int[capacity];
+        priority = new int[capacity];
+        resetStorage(capacity);
+        root = NIL;
+        used = 1;
+        freeHead = NIL;
+        numKeys = 0;
+    }
+
+    private void grow() {
+        int capacity = left.length * 2;
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        priority = Arrays.copyOf(priority, capacity);
+        growStorage(capacity, used);
+    }
+
+    // Take a handle from the free list, or the next unused one
+    private int newNode(String key, ArrayList<MultimediaItem> items, int prio) {
+        int n;
+        if (freeHead != NIL) {
+            n = freeHead;
+            freeHead = left[n];
+        } else {
+            if (used == left.length) grow();
+            n = used++;
+        }
+        left[n] = NIL;
+        right[n] = NIL;
+        parent[n] = NIL;
+        priority[n] = prio;
+        store(n, key, items);
+        return n;
+    }
+
+    private void freeNode(int n) {
+        release(n);
+        right[n] = NIL;
+        parent[n] = NIL;
+        left[n] = freeHead;
+        freeHead = n;
+    }
+
+    private int build(ArrayList<Data> sorted, int lo, int hi, int p, int depth) {
+        if (lo > hi) return NIL;
+        int mid = (lo + hi) >>> 1;
+        Data data = sorted.get(mid);
+        int n = newNode(data.getName(), data.getMedia(), Integer.MAX_VALUE - depth);
+        parent[n] = p;
+        left[n] = build(sorted, lo, mid - 1, n, depth + 1);
+        right[n] = build(sorted, mid + 1, hi, n, depth + 1);
+        return n;
+    }
+
+    // Rotate n above its parent, keeping key order
+    private void rotateUp(int n) {
+        int p = parent[n];
+        int g = parent[p];
+        if (left[p] == n) {
+            left[p] = right[n];
+            if (right[n] != NIL) parent[right[n]] = p;
+            right[n] = p;
+        } else {
+            right[p] = left[n];
+            if (left[n] != NIL) parent[left[n]] = p;
+            left[n] = p;
+        }
+        parent[p] = n;
+        parent[n] = g;
+        if (g == NIL) root = n;
+        else if (left[g] == p) left[g] = n;
+        else right[g] = n;
+    }
+
+    private int find(String key) {
+        int n = root;
+        while (n != NIL) {
+            int cmp = compareKey(key, n);
+            if (cmp == 0) return n;
+            n = (cmp < 0) ? left[n] : right[n];
+        }
+        return NIL;
+    }
+
+    private int ceiling(String key) {
+        int result = NIL;
+        int n = root;
+        while (n != NIL) {
+            int cmp = compareKey(key, n);
+            if (cmp == 0) return n;
+            if (cmp < 0) {
+                result = n;
+                n = left[n];
+            } else {
+                n = right[n];
+            }
+        }
+        return result;
+    }
+
+    private int floor(String key) {
+        int result = NIL;
+        int n = root;
+        while (n != NIL) {
+            int cmp = compareKey(key, n);
+            if (cmp == 0) return n;
+            if (cmp > 0) {
+                result = n;
+                n = right[n];
+            } else {
+                n = left[n];
+            }
+        }
+        return result;
+    }
+
+    private int leftmost(int n) {
+        if (n == NIL) return NIL;
+        while (left[n] != NIL) n = left[n];
+        return n;
+    }
+
+    private int rightmost(int n) {
+        if (n == NIL) return NIL;
+        while (right[n] != NIL) n = right[n];
+        return n;
+    }
+
+    // In-order successor of node n
+    private int next(int n) {
+        if (right[n] != NIL) return leftmost(right[n]);
+        int p = parent[n];
+        while (p != NIL && right[p] == n) {
+            n = p;
+            p = parent[p];
+        }
+        return p;
+    }
+
+    // In-order predecessor of node n
+    private int previous(int n) {
+        if (left[n] != NIL) return rightmost(left[n]);
+        int p = parent[n];
+        while (p != NIL && left[p] == n) {
+            n = p;
+            p = parent[p];
+        }
+        return p;
+    }
+
+    // A Data for node n with a copy of its media list, or null for NIL
+    private Data dataAt(int n) {
+        if (n == NIL) return null;
+        Data data = new Data(keyAt(n));
+        for (MultimediaItem item : mediaAt(n)) data.add(item);
+        return data;
+    }
+
+    // Number of nodes under n if that subtree is valid within (lo, hi), else -1
+    private int check(int n, String lo, String hi) {
+        if (n == NIL) return 0;
+        String key = keyAt(n);
+        if ((lo != null && key.compareTo(lo) <= 0) || (hi != null && key.compareTo(hi) >= 0)) return -1;
+        for (int c : new int[] {left[n], right[n]}) {
+            if (c != NIL && (parent[c] != n || priority[c] > priority[n])) return -1;
+        }
+        int l = check(left[n], lo, key);
+        int r = check(right[n], key, hi);
+        return (l < 0 || r < 0) ? -1 : l + r + 1;
+    }
+}
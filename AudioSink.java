@@ -0,0 +1,23 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/*
+ * Where AudioStreamer sends decoded PCM. LineAudioSink plays it on a SourceDataLine;
+ * NullAudioSink only counts it, so streaming can be tested without a sound device.
+ */
+public interface AudioSink {
+
+	// Get ready for PCM in format, holding at most bufferBytes not yet played
+	public void open(AudioFormat format, int bufferBytes) throws LineUnavailableException;
+
+	// Queue len bytes from b, blocking while the buffer is full; returns the bytes taken
+	public int write(byte[] b, int off, int len);
+
+	// Block until everything written has been played
+	public void drain();
+
+	// Drop whatever has not been played yet
+	public void flush();
+
+	public void close();
+}
@@ -0,0 +1,79 @@
+import java.io.File;
+import java.io.IOException;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/*
+ * Plays a sound file by streaming its PCM through a fixed-size buffer instead of
+ * decoding all of it into a Clip first. Memory stays at ringBytes whatever the
+ * file's length, playback starts after the first chunk is decoded, and files too
+ * long for a Clip still play. Each write hands the sink a quarter of the ring, so
+ * decoding stays ahead of playback while the rest of the ring is playing.
+ *
+ * An interrupt is noticed between chunks: what is queued is dropped and
+ * InterruptedException is thrown, as with SoundPlayer.playToEnd.
+ */
+public class AudioStreamer {
+
+    public static final int RING_BYTES = 64 * 1024; // About 0.37 s of CD-quality stereo
+
+    private final AudioSink sink;
+    private final int ringBytes;
+
+    public AudioStreamer(AudioSink sink) {
+        this(sink, RING_BYTES);
+    }
+
+    public AudioStreamer(AudioSink sink, int ringBytes) {
+        if (ringBytes <= 0) throw new IllegalArgumentException("Buffer size must be positive: " + ringBytes);
+        this.sink = sink;
+        this.ringBytes = ringBytes;
+    }
+
+    // Stream all of fileName to the sink and wait for it to play; returns the PCM bytes streamed
+    public long play(String fileName) throws MultimediaException, InterruptedException {
+        try (AudioInputStream in = toPcm(AudioSystem.getAudioInputStream(new File(fileName).getAbsoluteFile()))) {
+            AudioFormat format = in.getFormat();
+            int frame = Math.max(1, format.getFrameSize());
+            byte[] chunk = new byte[Math.max(frame, ringBytes / 4 / frame * frame)]; // Whole frames only
+
+            sink.open(format, ringBytes);
+            try {
+                long total = 0;
+                int n;
+                while ((n = in.read(chunk, 0, chunk.length)) > 0) {
+                    if (Thread.interrupted()) {
+                        sink.flush();
+                        throw new InterruptedException();
+                    }
+                    for (int off = 0; off < n; ) {
+                        int written = sink.write(chunk, off, n - off);
+                        if (written <= 0) return total + off; // The sink was stopped under us
+                        off += written;
+                    }
+                    total += n;
+                }
+                sink.drain();
+                return total;
+            } finally {
+                sink.close();
+            }
+        } catch (IOException | UnsupportedAudioFileException | LineUnavailableException e) {
+            throw new MultimediaException("Error processing input file " + fileName);
+        }
+    }
+
+    // Lines take signed or unsigned PCM; anything else (e.g. u-law) is decoded to 16-bit PCM
+    private static AudioInputStream toPcm(AudioInputStream in) {
+        AudioFormat f = in.getFormat();
+        if (f.getEncoding() == AudioFormat.Encoding.PCM_SIGNED || f.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED) {
+            return in;
+        }
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, f.getSampleRate(), 16,
+                f.getChannels(), f.getChannels() * 2, f.getSampleRate(), false);
+        return AudioSystem.getAudioInputStream(pcm, in);
+    }
+}
@@ -0,0 +1,359 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * B+-tree ordered dictionary. Nodes are wide (up to ORDER keys in sorted arrays),
+ * so a lookup in millions of keys touches only three or four nodes and does its
+ * comparisons within one array instead of chasing a pointer per level. All Data
+ * lives in the leaves, which are linked both ways, so next/prev scans run along
+ * the leaf chain without going back up the tree.
+ *
+ * An inner node with k keys has k + 1 children; keys >= keys[i] are found under
+ * children[i + 1]. Deletion is relaxed: a key is removed from its leaf and nodes
+ * are never merged, so leaves may become underfull. A leaf that becomes empty is
+ * unlinked from the chain and from its parent (as is any ancestor left with no
+ * children), so scans and smallest/largest never cross empty leaves. Separator
+ * keys stay valid as routing keys either way. buildFromSorted repacks everything
+ * into full nodes.
+ */
+public class BPlusTreeOrderedDictionary implements OrderedDictionary {
+
+    private static final int ORDER = 64; // Most keys a node may hold
+
+    private Node root;        // A Leaf while the tree has one level
+    private Leaf firstLeaf;   // Head of the leaf chain
+    private int numKeys;      // Number of keys in the leaves
+
+    public BPlusTreeOrderedDictionary() {
+        clear();
+    }
+
+    public int size() {
+        return numKeys;
+    }
+
+    // Number of levels, counting the leaves
+    public int height() {
+        int h = 1;
+        for (Node n = root; n instanceof Inner; n = ((Inner) n).children[0]) h++;
+        return h;
+    }
+
+    public ArrayList<MultimediaItem> get(String key) {
+        Leaf leaf = findLeaf(key);
+        int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+        return (i >= 0) ? leaf.values[i].getMedia() : null;
+    }
+
+    public void put(String key, String content, int type) {
+        // Descend, remembering the path so splits can be pushed back up
+        Inner[] path = new Inner[height()];
+        int[] slots = new int[path.length];
+        int depth = 0;
+        Node n = root;
+        while (n instanceof Inner) {
+            Inner in = (Inner) n;
+            int slot = childIndex(in, key);
+            path[depth] = in;
+            slots[depth] = slot;
+            depth++;
+            n = in.children[slot];
+        }
+
+        Leaf leaf = (Leaf) n;
+        int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+        if (i >= 0) {
+            leaf.values[i].add(new MultimediaItem(content, type)); // Key exists, just add the media item
+            return;
+        }
+
+        Data data = new Data(key);
+        data.add(new MultimediaItem(content, type));
+        leaf.insert(-i - 1, key, data);
+        numKeys++;
+        if (leaf.count < ORDER) return;
+
+        // Split the full leaf and then every full ancestor
+        Node right = leaf.split();
+        String separator = ((Leaf) right).keys[0];
+        while (depth > 0) {
+            depth--;
+            Inner parent = path[depth];
+            parent.insert(slots[depth], separator, right);
+            if (parent.count < ORDER) return;
+            separator = parent.keys[parent.count / 2];
+            right = parent.split();
+        }
+
+        Inner newRoot = new Inner();
+        newRoot.keys[0] = separator;
+        newRoot.children[0] = root;
+        newRoot.children[1] = right;
+        newRoot.count = 1;
+        root = newRoot;
+    }
+
+    public void remove(String key) throws DictionaryException {
+        Inner[] path = new Inner[height()];
+        int[] slots = new int[path.length];
+        int depth = 0;
+        Node n = root;
+        while (n instanceof Inner) {
+            Inner in = (Inner) n;
+            int slot = childIndex(in, key);
+            path[depth] = in;
+            slots[depth] = slot;
+            depth++;
+            n = in.children[slot];
+        }
+
+        Leaf leaf = (Leaf) n;
+        int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+        if (i < 0) throw new DictionaryException("Key not found.");
+        leaf.delete(i);
+        numKeys--;
+        if (leaf.count > 0 || depth == 0) return; // The root leaf may be empty
+
+        // Unlink the empty leaf from the chain, then from the lowest ancestor that keeps other children
+        if (leaf.prev != null) leaf.prev.next = leaf.next;
+        else firstLeaf = leaf.next;
+        if (leaf.next != null) leaf.next.prev = leaf.prev;
+
+        int level = depth - 1;
+        while (level >= 0 && path[level].count == 0) level--; // Ancestors whose only child is going
+        if (level < 0) {
+            clear();
+            return;
+        }
+        path[level].removeChild(slots[level]);
+        while (root instanceof Inner && ((Inner) root).count == 0) root = ((Inner) root).children[0];
+    }
+
+    // Remove the media of the given type from key, and key itself if nothing remains
+    public void remove(String key, int type) throws DictionaryException {
+        ArrayList<MultimediaItem> list = get(key);
+        if (list == null) throw new DictionaryException("Key not found.");
+
+        list.removeIf(item -> item.getType() == type); // Remove media items matching type
+        if (list.isEmpty()) remove(key);
+    }
+
+    public Data successor(String key) {
+        ArrayList<Data> next = ascendingFrom(key, 2);
+        if (!next.isEmpty() && next.get(0).getName().equals(key)) next.remove(0);
+        return next.isEmpty() ? null : next.get(0);
+    }
+
+    public Data predecessor(String key) {
+        ArrayList<Data> prev = descendingFrom(key, 2);
+        if (!prev.isEmpty() && prev.get(0).getName().equals(key)) prev.remove(0);
+        return prev.isEmpty() ? null : prev.get(0);
+    }
+
+    // Leaves are never empty unless the whole tree is
+    public Data smallest() {
+        return (firstLeaf.count > 0) ? firstLeaf.values[0] : null;
+    }
+
+    public Data largest() {
+        Leaf leaf = lastLeaf();
+        return (leaf.count > 0) ? leaf.values[leaf.count - 1] : null;
+    }
+
+    // Seek once, then walk the leaf chain forward
+    public ArrayList<Data> ascendingFrom(String key, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        Leaf leaf = findLeaf(key);
+        int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+        if (i < 0) i = -i - 1; // First key greater than key
+
+        while (leaf != null && result.size() < count) {
+            for (; i < leaf.count && result.size() < count; i++) result.add(leaf.values[i]);
+            leaf = leaf.next;
+            i = 0;
+        }
+        return result;
+    }
+
+    // Seek once, then walk the leaf chain backward
+    public ArrayList<Data> descendingFrom(String key, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        Leaf leaf = findLeaf(key);
+        int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+        if (i < 0) i = -i - 2; // Last key smaller than key
+
+        while (leaf != null && result.size() < count) {
+            for (; i >= 0 && result.size() < count; i--) result.add(leaf.values[i]);
+            leaf = leaf.prev;
+            if (leaf != null) i = leaf.count - 1;
+        }
+        return result;
+    }
+
+    // Replace the contents with full nodes built bottom-up from keys in strictly increasing order
+    public void buildFromSorted(ArrayList<Data> sorted) {
+        clear();
+        if (sorted.isEmpty()) return;
+
+        // Leaf level, chained in order
+        ArrayList<Node> level = new ArrayList<Node>();
+        ArrayList<String> lowKeys = new ArrayList<String>(); // Smallest key under each node of level
+        Leaf last = null;
+        for (int start = 0; start < sorted.size(); start += ORDER - 1) {
+            Leaf leaf = new Leaf();
+            int end = Math.min(start + ORDER - 1, sorted.size());
+            for (int j = start; j < end; j++) {
+                leaf.keys[leaf.count] = sorted.get(j).getName();
+                leaf.values[leaf.count] = sorted.get(j);
+                leaf.count++;
+            }
+            if (last == null) {
+                firstLeaf = leaf;
+            } else {
+                last.next = leaf;
+                leaf.prev = last;
+            }
+            last = leaf;
+            level.add(leaf);
+            lowKeys.add(leaf.keys[0]);
+        }
+
+        // Inner levels: each node takes up to ORDER children of the level below
+        while (level.size() > 1) {
+            ArrayList<Node> parents = new ArrayList<Node>();
+            ArrayList<String> parentLowKeys = new ArrayList<String>();
+            int start = 0;
+            while (start < level.size()) {
+                int end = Math.min(start + ORDER, level.size());
+                if (level.size() - end == 1) end--; // Never leave a lone child for the last parent
+                Inner in = new Inner();
+                in.children[0] = level.get(start);
+                for (int j = start + 1; j < end; j++) {
+                    in.keys[in.count] = lowKeys.get(j);
+                    in.children[in.count + 1] = level.get(j);
+                    in.count++;
+                }
+                parents.add(in);
+                parentLowKeys.add(lowKeys.get(start));
+                start = end;
+            }
+            level = parents;
+            lowKeys = parentLowKeys;
+        }
+        root = level.get(0);
+        numKeys = sorted.size();
+    }
+
+    private void clear() {
+        firstLeaf = new Leaf();
+        root = firstLeaf;
+        numKeys = 0;
+    }
+
+    // Leaf whose key range contains key
+    private Leaf findLeaf(String key) {
+        Node n = root;
+        while (n instanceof Inner) {
+            Inner in = (Inner) n;
+            n = in.children[childIndex(in, key)];
+        }
+        return (Leaf) n;
+    }
+
+    private Leaf lastLeaf() {
+        Node n = root;
+        while (n instanceof Inner) {
+            Inner in = (Inner) n;
+            n = in.children[in.count];
+        }
+        return (Leaf) n;
+    }
+
+    // Index of the child of in that covers key: the number of separators <= key
+    private static int childIndex(Inner in, String key) {
+        int i = Arrays.binarySearch(in.keys, 0, in.count, key);
+        return (i >= 0) ? i + 1 : -i - 1;
+    }
+
+    private abstract static class Node {
+        String[] keys = new String[ORDER];
+        int count; // Keys in use
+    }
+
+    private static class Inner extends Node {
+        Node[] children = new Node[ORDER + 1];
+
+        // Insert separator with right as the child just after slot
+        void insert(int slot, String separator, Node right) {
+            System.arraycopy(keys, slot, keys, slot + 1, count - slot);
+            System.arraycopy(children, slot + 1, children, slot + 2, count - slot);
+            keys[slot] = separator;
+            children[slot + 1] = right;
+            count++;
+        }
+
+        // Drop the child at slot with the separator just below it (or, for the first child,
+        // just above it, so the next child takes over its range)
+        void removeChild(int slot) {
+            int key = (slot > 0) ? slot - 1 : 0;
+            System.arraycopy(keys, key + 1, keys, key, count - key - 1);
+            System.arraycopy(children, slot + 1, children, slot, count - slot);
+            count--;
+            keys[count] = null;
+            children[count + 1] = null;
+        }
+
+        // Move the upper half into a new node; the middle key moves up to the parent
+        Inner split() {
+            int mid = count / 2;
+            Inner right = new Inner();
+            right.count = count - mid - 1;
+            System.arraycopy(keys, mid + 1, right.keys, 0, right.count);
+            System.arraycopy(children, mid + 1, right.children, 0, right.count + 1);
+            Arrays.fill(keys, mid, count, null);
+            Arrays.fill(children, mid + 1, count + 1, null);
+            count = mid;
+            return right;
+        }
+    }
+
+    private static class Leaf extends Node {
+        Data[] values = new Data[ORDER];
+        Leaf next; // Following leaf in key order
+        Leaf prev; // Preceding leaf in key order
+
+        void insert(int i, String key, Data data) {
+            System.arraycopy(keys, i, keys, i + 1, count - i);
+            System.arraycopy(values, i, values, i + 1, count - i);
+            keys[i] = key;
+            values[i] = data;
+            count++;
+        }
+
+        void delete(int i) {
+            System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+            System.arraycopy(values, i + 1, values, i, count - i - 1);
+            count--;
+            keys[count] = null;
+            values[count] = null;
+        }
+
+        // Move the upper half into a new leaf linked in after this one
+        Leaf split() {
+            int mid = count / 2;
+            Leaf right = new Leaf();
+            right.count = count - mid;
+            System.arraycopy(keys, mid, right.keys, 0, right.count);
+            System.arraycopy(values, mid, right.values, 0, right.count);
+            Arrays.fill(keys, mid, count, null);
+            Arrays.fill(values, mid, count, null);
+            count = mid;
+
+            right.next = next;
+            right.prev = this;
+            if (next != null) next.prev = right;
+            next = right;
+            return right;
+        }
+    }
+}
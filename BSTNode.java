@@ -1,9 +1,16 @@
 public class BSTNode {
 
+    // The one leaf shared as a child by every internal node of every tree. It is
+    // never modified: trees put it in place of a leaf and never write through it.
+    // Only an empty dictionary's root is a leaf of its own, so it can be converted in place.
+    public static final BSTNode LEAF = new BSTNode();
+
     private BSTNode parent;    // Reference to parent node
     private BSTNode leftChild; // Reference to left child
     private BSTNode rightChild; // Reference to right child
     private Data data;         // Data stored in this node
+    private boolean red;       // Colour used by RedBlackOrderedDictionary (leaves are always black)
+    private int size;          // Number of internal nodes in the subtree rooted here (0 for a leaf)
 
     // Default constructor: creates a leaf node with no parent, children, or data
     public BSTNode() {
@@ -61,6 +68,26 @@ public class BSTNode {
         this.data = newData;
     }
 
+    // Getter for subtree size
+    public int getSize() {
+        return size;
+    }
+
+    // Setter for subtree size
+    public void setSize(int newSize) {
+        this.size = newSize;
+    }
+
+    // Returns true if node is coloured red (only meaningful in a red-black tree)
+    public boolean isRed() {
+        return red;
+    }
+
+    // Setter for colour
+    public void setRed(boolean newRed) {
+        this.red = newRed;
+    }
+
     // Returns true if node is a leaf (i.e., has no children)
     public boolean isLeaf() {
         if (leftChild == null && rightChild == null) {
@@ -1,9 +1,11 @@
 import java.util.ArrayList;
+import java.util.HashMap;
 
-public class BSTOrderedDictionary implements BSTOrderedDictionaryADT {
+public class BSTOrderedDictionary implements BSTOrderedDictionaryADT, OrderedDictionary {
     
     BSTNode root;               // Root node of the BST
     int numInternalNodes;       // Count of internal nodes (non-leaf nodes)
+    HashMap<String, Data> index; // Optional key -> Data index for exact gets, or null (see setHashIndex)
 
     public BSTOrderedDictionary() {
         this.numInternalNodes = 0; 
@@ -18,57 +20,102 @@ public class BSTOrderedDictionary implements BSTOrderedDictionaryADT {
         return numInternalNodes; // Getter for number of internal nodes
     } 
 
-    // Retrieve list of MultimediaItems associated with a key
-    public ArrayList<MultimediaItem> get(BSTNode r, String key) {
-        if (r == null || r.isLeaf()) { 
-            return null; // Key not found or reached a leaf
+    // Keep a hash index from key to Data beside the tree (or drop it). While it is on,
+    // get from the root is one hash lookup instead of a descent; every ordered
+    // operation still uses the tree. Costs one HashMap entry per key.
+    public void setHashIndex(boolean on) {
+        if (!on) {
+            index = null;
+        } else if (index == null) {
+            index = new HashMap<String, Data>(Math.max(16, numInternalNodes * 4 / 3 + 1));
+            DictionaryCursor cursor = cursor();
+            if (cursor.seekCeiling("")) {
+                do {
+                    index.put(cursor.getData().getName(), cursor.getData());
+                } while (cursor.next());
+            }
         }
-        
-        String nodeKey = r.getData().getName();
-        
-        if (nodeKey.equals(key)) {
-            return r.getData().getMedia(); // Key found, return media list
+    }
+
+    public boolean hasHashIndex() {
+        return index != null;
+    }
+
+    // Number of internal nodes on the longest root-to-leaf path (0 for an empty dictionary)
+    public int height() {
+        if (root == null || root.isLeaf()) return 0;
+
+        // Level-order walk so a degenerate tree cannot overflow the call stack
+        ArrayList<BSTNode> level = new ArrayList<BSTNode>();
+        level.add(root);
+        int h = 0;
+        while (!level.isEmpty()) {
+            h++;
+            ArrayList<BSTNode> nextLevel = new ArrayList<BSTNode>();
+            for (BSTNode n : level) {
+                if (!n.getLeftChild().isLeaf()) nextLevel.add(n.getLeftChild());
+                if (!n.getRightChild().isLeaf()) nextLevel.add(n.getRightChild());
+            }
+            level = nextLevel;
         }
-        else if (key.compareTo(nodeKey) < 0) {
-            return get(r.getLeftChild(), key); // Go left if key is smaller
+        return h;
+    }
+
+    // Retrieve list of MultimediaItems associated with a key
+    public ArrayList<MultimediaItem> get(BSTNode r, String key) {
+        if (index != null && r == root) {
+            Data data = index.get(key); // Whole-tree lookup: the index knows every key
+            return (data == null) ? null : data.getMedia();
         }
-        else {
-            return get(r.getRightChild(), key); // Go right if key is larger
+
+        BSTNode target = findNode(r, key);
+        if (target == null) {
+            return null; // Key not found
         }
+        return target.getData().getMedia(); // Key found, return media list
     }
 
     // Insert a new key-media pair into the BST
     public void put(BSTNode r, String key, String content, int type) {
+        if (r == BSTNode.LEAF) throw new IllegalArgumentException("Cannot insert into the shared leaf");
+
+        Data data;
         if (r.isLeaf()) {
-            // Convert leaf to internal node with new data
-            r.setData(new Data(key));
-            r.getData().add(new MultimediaItem(content, type));
-
-            // Create new leaf children with parent pointers
-            BSTNode leftLeaf = new BSTNode();
-            leftLeaf.setParent(r);
-            r.setLeftChild(leftLeaf);
-            
-            BSTNode rightLeaf = new BSTNode();
-            rightLeaf.setParent(r);
-            r.setRightChild(rightLeaf);
-
-            numInternalNodes++; // Increment internal node count
+            // Empty dictionary: the root becomes the first internal node
+            data = new Data(key);
+            data.add(new MultimediaItem(content, type));
+            r.setData(data);
+            if (index != null) index.put(key, data);
+            r.setLeftChild(BSTNode.LEAF);
+            r.setRightChild(BSTNode.LEAF);
+            adjustSizes(r, 1);
+            numInternalNodes++;
             return;
         }
 
-        // If key exists, just add the media item
-        if (r.getData().getName().equals(key)) {
-            r.getData().add(new MultimediaItem(content, type));
-            return;
-        } 
-
-        // Recursively insert based on comparison
-        if (key.compareTo(r.getData().getName()) < 0) {
-            put(r.getLeftChild(), key, content, type);
-        }
-        else {
-            put(r.getRightChild(), key, content, type);
+        // Walk down to the node whose leaf child the key belongs in (loop, so depth is not limited by the call stack)
+        SearchKey probe = new SearchKey(key);
+        while (true) {
+            int cmp = probe.compareTo(r.getData());
+            if (cmp == 0) {
+                r.getData().add(new MultimediaItem(content, type)); // Key exists, just add the media item
+                return;
+            }
+            BSTNode child = (cmp < 0) ? r.getLeftChild() : r.getRightChild();
+            if (child.isLeaf()) {
+                // Hang a new internal node with two shared leaves where the leaf was
+                data = new Data(key);
+                data.add(new MultimediaItem(content, type));
+                BSTNode node = new BSTNode(r, BSTNode.LEAF, BSTNode.LEAF, data);
+                if (index != null) index.put(key, data);
+                if (cmp < 0) r.setLeftChild(node);
+                else r.setRightChild(node);
+
+                adjustSizes(node, 1); // The new node and all its ancestors gain one key
+                numInternalNodes++; // Increment internal node count
+                return;
+            }
+            r = child;
         }
     }
     
@@ -78,12 +125,12 @@ public class BSTOrderedDictionary implements BSTOrderedDictionaryADT {
         if (target == null || target.isLeaf()) {
             throw new DictionaryException("Key not found."); // Node does not exist
         }
+        if (index != null) index.remove(key);
 
         // CASE 1: Node has two leaf children (no real children)
         if (target.getLeftChild().isLeaf() && target.getRightChild().isLeaf()) {
-            target.setData(null);       // Remove node data
-            target.setLeftChild(null);  // Remove children
-            target.setRightChild(null);
+            removeLeafParent(target);
+            adjustSizes(target.getParent(), -1);
             numInternalNodes--;
             return;
         }
@@ -91,12 +138,14 @@ public class BSTOrderedDictionary implements BSTOrderedDictionaryADT {
         // CASE 2: Node has exactly one child
         if (target.getLeftChild().isLeaf() && !target.getRightChild().isLeaf()) {
             replaceNode(target, target.getRightChild()); // Replace node with its child
+            adjustSizes(target.getParent(), -1);
             numInternalNodes--;
             return;
         }
         
         if (!target.getLeftChild().isLeaf() && target.getRightChild().isLeaf()) {
             replaceNode(target, target.getLeftChild()); // Replace node with its child
+            adjustSizes(target.getParent(), -1);
             numInternalNodes--;
             return;
         }
@@ -107,13 +156,12 @@ public class BSTOrderedDictionary implements BSTOrderedDictionaryADT {
 
         // Remove successor (it will have at most one child)
         if (succ.getLeftChild().isLeaf() && succ.getRightChild().isLeaf()) {
-            succ.setData(null);
-            succ.setLeftChild(null);
-            succ.setRightChild(null);
+            removeLeafParent(succ);
         } else {
             replaceNode(succ, succ.getRightChild());
         }
 
+        adjustSizes(succ.getParent(), -1); // target is an ancestor, so its count drops too
         numInternalNodes--;
     }
     
@@ -181,6 +229,179 @@ public class BSTOrderedDictionary implements BSTOrderedDictionaryADT {
         }
     }
 
+    // Replace the contents of the dictionary with the given Data, which must be in
+    // strictly increasing key order. Runs in O(n).
+    public void buildFromSorted(ArrayList<Data> sorted) {
+        int n = sorted.size();
+        int height = 0; // Levels of internal nodes in a minimum-height tree
+        while ((1L << height) <= n) height++;
+
+        root = (n == 0) ? new BSTNode() : buildSubtree(sorted, 0, n - 1, null, 0, height);
+        numInternalNodes = n;
+        if (index != null) {
+            index = null;
+            setHashIndex(true); // Rebuilt for the new contents
+        }
+    }
+
+    // Build a balanced subtree from sorted[lo..hi]. The bottom level is coloured red
+    // and everything else black, so the result is also a valid red-black tree.
+    private BSTNode buildSubtree(ArrayList<Data> sorted, int lo, int hi, BSTNode parent, int depth, int height) {
+        if (lo > hi) return BSTNode.LEAF;
+
+        int mid = (lo + hi) >>> 1;
+        BSTNode node = new BSTNode(parent, null, null, sorted.get(mid));
+        node.setLeftChild(buildSubtree(sorted, lo, mid - 1, node, depth + 1, height));
+        node.setRightChild(buildSubtree(sorted, mid + 1, hi, node, depth + 1, height));
+        node.setSize(hi - lo + 1);
+        node.setRed(depth > 0 && depth == height - 1);
+        return node;
+    }
+
+    // OrderedDictionary: the same operations on the whole tree, starting from the root
+
+    public int size() {
+        return getNumInternalNodes();
+    }
+
+    public ArrayList<MultimediaItem> get(String key) {
+        return get(root, key);
+    }
+
+    public void put(String key, String content, int type) {
+        put(root, key, content, type);
+    }
+
+    public void remove(String key) throws DictionaryException {
+        remove(root, key);
+    }
+
+    public void remove(String key, int type) throws DictionaryException {
+        remove(root, key, type);
+    }
+
+    public Data successor(String key) {
+        return successor(root, key);
+    }
+
+    public Data predecessor(String key) {
+        return predecessor(root, key);
+    }
+
+    public Data smallest() {
+        return smallest(root);
+    }
+
+    public Data largest() {
+        return largest(root);
+    }
+
+    // Seek once with a cursor, then step along the tree
+    public ArrayList<Data> ascendingFrom(String key, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        DictionaryCursor cursor = cursor();
+        if (count > 0 && cursor.seekCeiling(key)) {
+            do {
+                result.add(cursor.getData());
+            } while (result.size() < count && cursor.next());
+        }
+        return result;
+    }
+
+    public ArrayList<Data> descendingFrom(String key, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        DictionaryCursor cursor = cursor();
+        if (count > 0 && cursor.seekFloor(key)) {
+            do {
+                result.add(cursor.getData());
+            } while (result.size() < count && cursor.previous());
+        }
+        return result;
+    }
+
+    // New cursor over this dictionary; position it with seekCeiling or seekFloor
+    public DictionaryCursor cursor() {
+        return new DictionaryCursor(this);
+    }
+
+    // Number of keys in subtree r that are strictly smaller than key
+    public int rank(BSTNode r, String key) {
+        int count = 0;
+        SearchKey probe = new SearchKey(key);
+        BSTNode curr = r;
+        while (curr != null && !curr.isLeaf()) {
+            int cmp = probe.compareTo(curr.getData());
+            if (cmp <= 0) {
+                if (cmp == 0) return count + curr.getLeftChild().getSize();
+                curr = curr.getLeftChild();
+            } else {
+                count += curr.getLeftChild().getSize() + 1; // Left subtree and this node are smaller
+                curr = curr.getRightChild();
+            }
+        }
+        return count;
+    }
+
+    // Get the key with exactly k smaller keys in subtree r (k counts from 0), or null if out of range
+    public Data select(BSTNode r, int k) {
+        if (r == null || k < 0 || k >= r.getSize()) return null;
+
+        BSTNode curr = r;
+        while (!curr.isLeaf()) {
+            int leftSize = curr.getLeftChild().getSize();
+            if (k < leftSize) {
+                curr = curr.getLeftChild();
+            } else if (k == leftSize) {
+                return curr.getData();
+            } else {
+                k -= leftSize + 1; // Skip the left subtree and this node
+                curr = curr.getRightChild();
+            }
+        }
+        return null;
+    }
+
+    // Number of keys in subtree r between lo and hi, both inclusive
+    public int countRange(BSTNode r, String lo, String hi) {
+        if (lo.compareTo(hi) > 0) return 0;
+
+        SearchKey low = new SearchKey(lo), high = new SearchKey(hi);
+
+        // Walk down to the first node inside [lo, hi]; the two bounds split there
+        BSTNode split = r;
+        while (split != null && !split.isLeaf()) {
+            if (high.compareTo(split.getData()) < 0) split = split.getLeftChild();
+            else if (low.compareTo(split.getData()) > 0) split = split.getRightChild();
+            else break;
+        }
+        if (split == null || split.isLeaf()) return 0;
+
+        int count = 1; // The split node itself
+
+        // Keys >= lo in the left subtree
+        BSTNode curr = split.getLeftChild();
+        while (!curr.isLeaf()) {
+            if (low.compareTo(curr.getData()) <= 0) {
+                count += curr.getRightChild().getSize() + 1; // This node and its right subtree are in range
+                curr = curr.getLeftChild();
+            } else {
+                curr = curr.getRightChild();
+            }
+        }
+
+        // Keys <= hi in the right subtree
+        curr = split.getRightChild();
+        while (!curr.isLeaf()) {
+            if (high.compareTo(curr.getData()) >= 0) {
+                count += curr.getLeftChild().getSize() + 1; // This node and its left subtree are in range
+                curr = curr.getRightChild();
+            } else {
+                curr = curr.getLeftChild();
+            }
+        }
+        return count;
+    }
+
     // Get smallest key in subtree
     public Data smallest(BSTNode r) {
         if (r == null || r.isLeaf()) return null;
@@ -204,16 +425,42 @@ public class BSTOrderedDictionary implements BSTOrderedDictionaryADT {
     }
 
     // Helper to find a node by key
-    private BSTNode findNode(BSTNode r, String key) {
-        if (r == null || r.isLeaf()) return null;
+    BSTNode findNode(BSTNode r, String key) {
+        SearchKey probe = new SearchKey(key);
+        BSTNode curr = r;
+        while (curr != null && !curr.isLeaf()) {
+            int cmp = probe.compareTo(curr.getData());
+            if (cmp == 0) return curr;
+            curr = (cmp < 0) ? curr.getLeftChild() : curr.getRightChild();
+        }
+        return null; // Reached a leaf without finding the key
+    }
 
-        int cmp = key.compareTo(r.getData().getName());
-        if (cmp == 0) return r;
-        if (cmp < 0) return findNode(r.getLeftChild(), key);
-        return findNode(r.getRightChild(), key);
+    // Add delta to the subtree size of n and every ancestor of n
+    void adjustSizes(BSTNode n, int delta) {
+        while (n != null) {
+            n.setSize(n.getSize() + delta);
+            n = n.getParent();
+        }
+    }
+
+    // Unlink node, whose children are both leaves, by putting the shared leaf in its place.
+    // The root is instead emptied in place, so the dictionary keeps its own root node.
+    private void removeLeafParent(BSTNode node) {
+        BSTNode parent = node.getParent();
+        if (parent == null) {
+            node.setData(null);
+            node.setLeftChild(null);
+            node.setRightChild(null);
+            node.setSize(0);
+        } else if (parent.getLeftChild() == node) {
+            parent.setLeftChild(BSTNode.LEAF);
+        } else {
+            parent.setRightChild(BSTNode.LEAF);
+        }
     }
 
-    // Replace a node with another node in the tree
+    // Replace a node with another (internal) node in the tree
     private void replaceNode(BSTNode oldNode, BSTNode newNode) {
         BSTNode parent = oldNode.getParent();
 
@@ -231,7 +478,7 @@ public class BSTOrderedDictionary implements BSTOrderedDictionaryADT {
     }
 
     // Helper to find smallest node in subtree
-    private BSTNode smallestNode(BSTNode r) {
+    BSTNode smallestNode(BSTNode r) {
         if (r == null || r.isLeaf()) return null;
         
         BSTNode curr = r;
@@ -246,10 +493,11 @@ public class BSTOrderedDictionary implements BSTOrderedDictionaryADT {
         if (r == null || r.isLeaf()) return null;
         
         Data result = null;
+        SearchKey probe = new SearchKey(key);
         BSTNode curr = r;
         
         while (curr != null && !curr.isLeaf()) {
-            int cmp = key.compareTo(curr.getData().getName());
+            int cmp = probe.compareTo(curr.getData());
             if (cmp < 0) {
                 result = curr.getData(); // Potential successor
                 curr = curr.getLeftChild();
@@ -266,10 +514,11 @@ public class BSTOrderedDictionary implements BSTOrderedDictionaryADT {
         if (r == null || r.isLeaf()) return null;
         
         Data result = null;
+        SearchKey probe = new SearchKey(key);
         BSTNode curr = r;
         
         while (curr != null && !curr.isLeaf()) {
-            int cmp = key.compareTo(curr.getData().getName());
+            int cmp = probe.compareTo(curr.getData());
             if (cmp > 0) {
                 result = curr.getData(); // Potential predecessor
                 curr = curr.getRightChild();
@@ -0,0 +1,1279 @@
+import java.io.*;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Simple timing harness for the dictionary implementations.
+ * Usage: java Benchmark mode [arguments]
+ *
+ *   sorted [n]   load n sorted keys, comparing the recursive and iterative put/get
+ *   next [n] [d] 'next' over d keys: repeated successor() calls vs DictionaryCursor
+ *   startup [scale] [workers]
+ *                load large.txt repeated scale times, serially and with DictionaryLoader
+ *   alloc [scale]
+ *                bytes allocated per record by the BufferedReader load vs the mapped loader
+ *   snapshot [scale]
+ *                restart from large.txt scaled up: text parse vs binary snapshot load
+ *   wal [n]      latency of n durable 'add' commands through Query with a mutation log,
+ *                then durable appends from 1, 4 and 16 threads sharing group commits
+ *   concurrent [n] [seconds]
+ *                95/5 read/write mix at 1, 4 and 16 threads: one synchronized tree
+ *                vs ConcurrentOrderedDictionary
+ *   scan [n] [seconds]
+ *                full in-order scans alongside a steady stream of writes: a red-black
+ *                tree under a read/write lock vs pinned PersistentOrderedDictionary versions
+ *   skiplist [n] [seconds]
+ *                50% get / 50% put-or-remove at 1 to 2x-cores threads: synchronized
+ *                red-black tree vs SkipListOrderedDictionary
+ *   btree [n]    random point lookups and 1,000-key scans over n keys (default 10M):
+ *                red-black tree vs BPlusTreeOrderedDictionary (run with a large -Xmx)
+ *   heap [n]     retained heap per key of a red-black tree of n keys (default 5M),
+ *                built by put and by buildFromSorted
+ *   arrays [n]   retained heap per key and full-GC time with n keys (default 5M) loaded
+ *                by put: red-black tree vs ArrayOrderedDictionary
+ *   offheap [scale] [lookups]
+ *                large.txt x scale loaded into the red-black tree, ArrayOrderedDictionary and
+ *                OffHeapOrderedDictionary: heap retained, full-GC time, and GC pauses
+ *                during random lookups that allocate garbage
+ *   keys [scale] retained heap per key of large.txt x scale: the keys alone as Strings vs
+ *                FrontCodedKeys, and the whole red-black tree vs CompactOrderedDictionary
+ *   compare [n] [lookups]
+ *                lookup latency in a red-black tree of n keys (default 1M) sharing a 0-,
+ *                16- or 64-char prefix: plain String.compareTo descent vs SearchKey
+ *   index [n] [lookups]
+ *                heap cost of the hash index on a red-black tree of n keys (default 2M),
+ *                and exact-get latency through the tree vs through the index
+ *   rangecache [scale] [distinct] [commands]
+ *                Zipfian next/prev commands (over distinct queries, default 20000) with 1%
+ *                adds through Query on large.txt x scale: no cache vs RangeQueryCache sizes
+ *   media [loads]
+ *                time to get fireworks.wav, matrix.gif and fireworks.gif ready to play or
+ *                show: decoded from disk every time vs through MediaCache
+ *   validate [copies] [workers]
+ *                copies of every sound and image of small.txt probed by MediaValidator on
+ *                one thread and on workers threads, vs decoding each file in full
+ *   stream [seconds]
+ *                a generated WAV of that length (default 600, CD quality) played into a
+ *                NullAudioSink: Clip-style whole-file decode vs AudioStreamer, time to
+ *                first audio and bytes allocated
+ *   batch [scale] [commands] [workers]
+ *                replay of a get/next/prev script with 2% adds and removes (default 200000
+ *                commands) against large.txt x scale: the interactive loop's println per
+ *                result vs Query.runBatch, serial and with parallel read-only runs
+ *
+ * Each mode prints its own results; times are wall-clock from System.nanoTime.
+ */
+public class Benchmark {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java Benchmark mode [arguments]");
+            System.exit(0);
+        }
+
+        String mode = args[0];
+        switch (mode) {
+            case "sorted":
+                sortedKeys(intArg(args, 1, 1000000));
+                break;
+            case "next":
+                nextScan(intArg(args, 1, 1000000), intArg(args, 2, 10000));
+                break;
+            case "startup":
+                startup(intArg(args, 1, 100), intArg(args, 2, Runtime.getRuntime().availableProcessors()));
+                break;
+            case "alloc":
+                allocation(intArg(args, 1, 10));
+                break;
+            case "snapshot":
+                snapshotLoad(intArg(args, 1, 100));
+                break;
+            case "wal":
+                walLatency(intArg(args, 1, 100000));
+                break;
+            case "concurrent":
+                concurrentMix(intArg(args, 1, 100000), intArg(args, 2, 2));
+                break;
+            case "scan":
+                scanUnderWrites(intArg(args, 1, 100000), intArg(args, 2, 2));
+                break;
+            case "skiplist":
+                skipListScaling(intArg(args, 1, 100000), intArg(args, 2, 2));
+                break;
+            case "btree":
+                btreeLookups(intArg(args, 1, 10000000));
+                break;
+            case "heap":
+                retainedHeap(intArg(args, 1, 5000000));
+                break;
+            case "arrays":
+                arrayFootprint(intArg(args, 1, 5000000));
+                break;
+            case "offheap":
+                offHeapPauses(intArg(args, 1, 100), intArg(args, 2, 2000000));
+                break;
+            case "keys":
+                keyFootprint(intArg(args, 1, 100));
+                break;
+            case "media":
+                mediaLoads(intArg(args, 1, 50));
+                break;
+            case "validate":
+                validateMedia(intArg(args, 1, 50), intArg(args, 2, Runtime.getRuntime().availableProcessors()));
+                break;
+            case "stream":
+                streaming(intArg(args, 1, 600));
+                break;
+            case "batch":
+                batchReplay(intArg(args, 1, 4), intArg(args, 2, 200000),
+                        intArg(args, 3, Runtime.getRuntime().availableProcessors()));
+                break;
+            case "rangecache":
+                rangeCacheMix(intArg(args, 1, 40), intArg(args, 2, 20000), intArg(args, 3, 1000000));
+                break;
+            case "index":
+                hashIndexCost(intArg(args, 1, 2000000), intArg(args, 2, 2000000));
+                break;
+            case "compare":
+                compareLatency(intArg(args, 1, 1000000), intArg(args, 2, 2000000));
+                break;
+            default:
+                System.out.println("Unknown mode " + mode);
+        }
+    }
+
+    // Sorted keys: recursive vs iterative traversal in the plain BST, plus the red-black tree
+    private static void sortedKeys(int n) {
+        String[] keys = sortedKeyArray(n);
+
+        // The unbalanced tree is quadratic on sorted input, so cap its run to stay bounded
+        int spineKeys = Math.min(n, 10000);
+        System.out.println("Unbalanced BST, " + spineKeys + " sorted keys (a single spine)");
+
+        try {
+            BSTOrderedDictionary recursive = new BSTOrderedDictionary();
+            long start = System.nanoTime();
+            for (int i = 0; i < spineKeys; i++) recursivePut(recursive.getRoot(), keys[i]);
+            for (int i = 0; i < spineKeys; i++) recursiveGet(recursive.getRoot(), keys[i]);
+            report("  recursive put+get", 2L * spineKeys, System.nanoTime() - start);
+        } catch (StackOverflowError e) {
+            System.out.println("  recursive put+get: StackOverflowError");
+        }
+
+        BSTOrderedDictionary iterative = new BSTOrderedDictionary();
+        long start = System.nanoTime();
+        for (int i = 0; i < spineKeys; i++) iterative.put(iterative.getRoot(), keys[i], "x", 1);
+        for (int i = 0; i < spineKeys; i++) iterative.get(iterative.getRoot(), keys[i]);
+        report("  iterative put+get", 2L * spineKeys, System.nanoTime() - start);
+
+        System.out.println("Red-black tree, " + n + " sorted keys");
+        RedBlackOrderedDictionary rb = new RedBlackOrderedDictionary();
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) rb.put(rb.getRoot(), keys[i], "x", 1);
+        report("  put", n, System.nanoTime() - start);
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) rb.get(rb.getRoot(), keys[i]);
+        report("  get", n, System.nanoTime() - start);
+        System.out.println("  height " + rb.height());
+    }
+
+    // Scan d keys forward from the middle of an n-key dictionary, old way and with a cursor
+    private static void nextScan(int n, int d) {
+        String[] keys = sortedKeyArray(n);
+        RedBlackOrderedDictionary rb = new RedBlackOrderedDictionary();
+        for (int i = 0; i < n; i++) rb.put(rb.getRoot(), keys[i], "x", 1);
+        String from = keys[n / 2];
+        int rounds = 200;
+        System.out.println("next " + from + " " + d + " on " + n + " keys, " + rounds + " rounds");
+
+        for (int pass = 0; pass < 2; pass++) { // First pass warms up the JIT
+            long start = System.nanoTime();
+            int visited = 0;
+            for (int round = 0; round < rounds; round++) {
+                // Query.handleNext before the cursor: one root descent per successor
+                Data current = rb.successor(rb.getRoot(), from);
+                int count = 1;
+                while (current != null && count <= d) {
+                    count++;
+                    current = rb.successor(rb.getRoot(), current.getName());
+                }
+                visited += count;
+            }
+            if (pass == 1) report("  successor() loop", visited, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            visited = 0;
+            for (int round = 0; round < rounds; round++) {
+                DictionaryCursor cursor = rb.cursor();
+                int count = 0;
+                if (cursor.seekCeiling(from)) {
+                    do {
+                        count++;
+                    } while (count <= d && cursor.next());
+                }
+                visited += count;
+            }
+            if (pass == 1) report("  cursor", visited, System.nanoTime() - start);
+        }
+    }
+
+    // Cold-start time of a Query-style load of large.txt scaled up by the given factor
+    private static void startup(int scale, int workers) {
+        try {
+            File input = scaledCopy("large.txt", scale);
+            System.out.println("Loading " + input.length() + " bytes (large.txt x " + scale + ")");
+
+            for (int pass = 0; pass < 2; pass++) { // First pass warms up the JIT and the page cache
+                System.gc(); // Each run starts without the previous run's tree on the heap
+                long start = System.nanoTime();
+                RedBlackOrderedDictionary serial = new RedBlackOrderedDictionary();
+                serialLoad(input.getPath(), serial);
+                long serialNanos = System.nanoTime() - start;
+                int records = serial.getNumInternalNodes();
+                serial = null;
+
+                System.gc();
+                start = System.nanoTime();
+                RedBlackOrderedDictionary parallel = new RedBlackOrderedDictionary();
+                new DictionaryLoader(workers).load(input.getPath(), parallel);
+                long parallelNanos = System.nanoTime() - start;
+                parallel = null;
+
+                if (pass == 1) {
+                    report("  serial reader + bulkLoad", records, serialNanos);
+                    report("  DictionaryLoader, " + workers + " workers", records, parallelNanos);
+                }
+            }
+            input.delete();
+        } catch (IOException e) {
+            System.out.println("Cannot build input file: " + e.getMessage());
+        }
+    }
+
+    // Heap bytes allocated per record by each loader, both run on this thread
+    private static void allocation(int scale) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long self = Thread.currentThread().getId();
+
+        try {
+            File input = scaledCopy("large.txt", scale);
+            System.out.println("Loading large.txt x " + scale + " (includes the shared bulkLoad)");
+
+            for (int pass = 0; pass < 2; pass++) { // First pass warms up the JIT
+                long before = threads.getThreadAllocatedBytes(self);
+                RedBlackOrderedDictionary serial = new RedBlackOrderedDictionary();
+                serialLoad(input.getPath(), serial);
+                long serialBytes = threads.getThreadAllocatedBytes(self) - before;
+                serial = null;
+
+                before = threads.getThreadAllocatedBytes(self);
+                RedBlackOrderedDictionary mapped = new RedBlackOrderedDictionary();
+                new DictionaryLoader(1).load(input.getPath(), mapped); // One worker parses inline
+                long mappedBytes = threads.getThreadAllocatedBytes(self) - before;
+                long records = 0; // Key/content pairs loaded: one item each
+                for (Data data : mapped.ascendingFrom("", mapped.size())) records += data.getMedia().size();
+                mapped = null;
+
+                if (pass == 1) {
+                    System.out.printf("  BufferedReader + toLowerCase: %d bytes/record%n", serialBytes / records);
+                    System.out.printf("  mapped DictionaryLoader:      %d bytes/record%n", mappedBytes / records);
+                }
+            }
+            input.delete();
+        } catch (IOException e) {
+            System.out.println("Cannot build input file: " + e.getMessage());
+        }
+    }
+
+    // Time to rebuild the dictionary from the text file and from an equivalent snapshot
+    private static void snapshotLoad(int scale) {
+        try {
+            File input = scaledCopy("large.txt", scale);
+            File snapshot = File.createTempFile("bench", ".snap");
+            RedBlackOrderedDictionary dict = new RedBlackOrderedDictionary();
+            new DictionaryLoader(1).load(input.getPath(), dict);
+            DictionarySnapshot.save(dict, snapshot.getPath());
+            System.out.println("large.txt x " + scale + ": text " + input.length() + " bytes, snapshot " + snapshot.length() + " bytes");
+            int records = dict.getNumInternalNodes();
+            dict = null;
+
+            for (int pass = 0; pass < 2; pass++) { // First pass warms up the JIT and the page cache
+                System.gc();
+                long start = System.nanoTime();
+                new DictionaryLoader(1).load(input.getPath(), new RedBlackOrderedDictionary());
+                long textNanos = System.nanoTime() - start;
+
+                System.gc();
+                start = System.nanoTime();
+                DictionarySnapshot.load(snapshot.getPath(), new RedBlackOrderedDictionary());
+                long snapshotNanos = System.nanoTime() - start;
+
+                if (pass == 1) {
+                    report("  text parse + bulkLoad", records, textNanos);
+                    report("  snapshot load", records, snapshotNanos);
+                }
+            }
+            input.delete();
+            snapshot.delete();
+        } catch (IOException e) {
+            System.out.println("Cannot build input file: " + e.getMessage());
+        }
+    }
+
+    // Per-command latency of logged mutations, each durable before it returns
+    private static void walLatency(int n) {
+        try {
+            File logFile = File.createTempFile("bench", ".log");
+            logFile.delete();
+            Query query = new Query("small.txt", 1, logFile.getPath());
+
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) query.processCommand("add key" + i + " content" + i + " 1");
+            long appendNanos = System.nanoTime() - start;
+            query.close();
+
+            System.out.printf("%d durable adds: %.1f us/command, log %d bytes%n",
+                    n, appendNanos / 1e3 / n, logFile.length());
+            logFile.delete();
+            new File(logFile.getPath() + ".snapshot").delete();
+
+            // Writers that log at the same time wait on the same fsync
+            for (int threads : new int[] {1, 4, 16}) {
+                MutationLog log = new MutationLog(logFile.getPath(), 1);
+                int perThread = Math.max(1, n / threads);
+                Thread[] writers = new Thread[threads];
+                IOException[] failure = new IOException[1];
+                start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    int id = t;
+                    writers[t] = new Thread(() -> {
+                        try {
+                            for (int i = 0; i < perThread; i++) log.sync(log.logAdd("key" + id + "_" + i, "content", 1));
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    });
+                    writers[t].start();
+                }
+                for (Thread w : writers) w.join();
+                long nanos = System.nanoTime() - start;
+                log.close();
+                logFile.delete();
+                if (failure[0] != null) throw failure[0];
+                System.out.printf("  %2d threads: %,.0f durable appends/s%n", threads, perThread * threads / (nanos / 1e9));
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot create log file: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Throughput of a 95% get / 5% put-or-remove mix over n keys at several thread counts
+    private static void concurrentMix(int n, int seconds) {
+        String[] keys = sortedKeyArray(n);
+        int[] threadCounts = {1, 4, 16};
+
+        for (int threads : threadCounts) {
+            // Baseline: every operation holds the tree's monitor
+            RedBlackOrderedDictionary plain = new RedBlackOrderedDictionary();
+            for (String k : keys) plain.put(plain.getRoot(), k, "x", 1);
+            BSTOrderedDictionaryADT synced = synchronizedView(plain);
+
+            ConcurrentOrderedDictionary concurrent = new ConcurrentOrderedDictionary();
+            for (String k : keys) concurrent.put(null, k, "x", 1);
+
+            long syncedOps = runMix(synced, keys, threads, seconds);
+            long concurrentOps = runMix(concurrent, keys, threads, seconds);
+            System.out.printf("%2d threads: synchronized %,d ops/s, ConcurrentOrderedDictionary %,d ops/s%n",
+                    threads, syncedOps / seconds, concurrentOps / seconds);
+        }
+    }
+
+    // Run the read/write mix on dict from the given number of threads; returns operations done
+    private static long runMix(BSTOrderedDictionaryADT dict, String[] keys, int threads, int seconds) {
+        LongAdder ops = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                while ((done & 1023) != 0 || System.nanoTime() < deadline) {
+                    String key = keys[random.nextInt(keys.length)];
+                    int dice = random.nextInt(100);
+                    try {
+                        if (dice < 95) dict.get(dict.getRoot(), key);
+                        else if (dice < 98) dict.put(dict.getRoot(), key, "y", 1);
+                        else dict.remove(dict.getRoot(), key);
+                    } catch (DictionaryException e) {
+                        // Key already removed by another thread
+                    }
+                    done++;
+                }
+                ops.add(done);
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return ops.sum();
+    }
+
+    // Wraps a dictionary so that every call holds its monitor
+    private static BSTOrderedDictionaryADT synchronizedView(RedBlackOrderedDictionary d) {
+        return new BSTOrderedDictionaryADT() {
+            public synchronized BSTNode getRoot() { return d.getRoot(); }
+            public synchronized int getNumInternalNodes() { return d.getNumInternalNodes(); }
+            public synchronized ArrayList<MultimediaItem> get(BSTNode r, String k) { return d.get(d.getRoot(), k); }
+            public synchronized void put(BSTNode r, String name, String content, int type) { d.put(d.getRoot(), name, content, type); }
+            public synchronized void remove(BSTNode r, String k) throws DictionaryException { d.remove(d.getRoot(), k); }
+            public synchronized void remove(BSTNode r, String k, int type) throws DictionaryException { d.remove(d.getRoot(), k, type); }
+            public synchronized Data successor(BSTNode r, String k) { return d.successor(d.getRoot(), k); }
+            public synchronized Data predecessor(BSTNode r, String k) { return d.predecessor(d.getRoot(), k); }
+            public synchronized Data smallest(BSTNode r) { return d.smallest(d.getRoot()); }
+            public synchronized Data largest(BSTNode r) { return d.largest(d.getRoot()); }
+        };
+    }
+
+    // Two threads scanning all n keys while one thread keeps removing and re-adding keys
+    private static void scanUnderWrites(int n, int seconds) {
+        String[] keys = sortedKeyArray(n);
+
+        // Locked: a scan holds the read lock from start to end, so writes wait for it
+        RedBlackOrderedDictionary locked = new RedBlackOrderedDictionary();
+        for (String k : keys) locked.put(locked.getRoot(), k, "x", 1);
+        ReentrantReadWriteLock rw = new ReentrantReadWriteLock();
+        runScans("red-black tree + read/write lock", keys, seconds, () -> {
+            rw.readLock().lock();
+            try {
+                DictionaryCursor cursor = locked.cursor();
+                int count = 0;
+                if (cursor.seekCeiling("")) {
+                    do count++; while (cursor.next());
+                }
+                return count;
+            } finally {
+                rw.readLock().unlock();
+            }
+        }, key -> {
+            rw.writeLock().lock();
+            try {
+                locked.remove(locked.getRoot(), key);
+                locked.put(locked.getRoot(), key, "x", 1);
+            } catch (DictionaryException e) {
+                // Only this thread writes, so every key is present
+            } finally {
+                rw.writeLock().unlock();
+            }
+        });
+
+        // Persistent: a scan pins the current version and never blocks the writer
+        PersistentOrderedDictionary persistent = new PersistentOrderedDictionary();
+        for (String k : keys) persistent.put(null, k, "x", 1);
+        runScans("PersistentOrderedDictionary", keys, seconds, () -> {
+            PersistentOrderedDictionary.Scan scan = persistent.scan(persistent.getRoot(), "");
+            int count = 0;
+            while (scan.hasNext()) {
+                scan.next();
+                count++;
+            }
+            return count;
+        }, key -> {
+            try {
+                persistent.remove(null, key);
+                persistent.put(null, key, "x", 1);
+            } catch (DictionaryException e) {
+                // Only this thread writes, so every key is present
+            }
+        });
+    }
+
+    private interface ScanTask {
+        int scan();
+    }
+
+    private interface WriteTask {
+        void write(String key);
+    }
+
+    // Run two scanning threads and one writing thread for the given time and report both rates
+    private static void runScans(String label, String[] keys, int seconds, ScanTask scanner, WriteTask writer) {
+        LongAdder scans = new LongAdder();
+        LongAdder scanned = new LongAdder();
+        LongAdder writes = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+
+        Thread[] threads = new Thread[3];
+        for (int t = 0; t < 2; t++) {
+            threads[t] = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    scanned.add(scanner.scan());
+                    scans.increment();
+                }
+            });
+        }
+        threads[2] = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                writer.write(keys[random.nextInt(keys.length)]);
+                writes.increment();
+            }
+        });
+
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.printf("%s: %,d scans/s (%,d keys/s), %,d writes/s%n", label,
+                scans.sum() / seconds, scanned.sum() / seconds, writes.sum() / seconds);
+    }
+
+    // Write-heavy mix over n keys through OrderedDictionary, doubling the threads up to twice the cores
+    private static void skipListScaling(int n, int seconds) {
+        String[] keys = sortedKeyArray(n);
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(cores + " cores");
+
+        for (int threads = 1; threads <= Math.max(2 * cores, 4); threads *= 2) {
+            RedBlackOrderedDictionary tree = new RedBlackOrderedDictionary();
+            SkipListOrderedDictionary skipList = new SkipListOrderedDictionary();
+            for (String k : keys) {
+                tree.put(k, "x", 1);
+                skipList.put(k, "x", 1);
+            }
+
+            long treeOps = runWrites(synchronizedOrdered(tree), keys, threads, seconds);
+            long skipOps = runWrites(skipList, keys, threads, seconds);
+            System.out.printf("%2d threads: synchronized tree %,d ops/s, skip list %,d ops/s%n",
+                    threads, treeOps / seconds, skipOps / seconds);
+        }
+    }
+
+    // Run a 50% get / 25% put / 25% remove mix from the given number of threads; returns operations done
+    private static long runWrites(OrderedDictionary dict, String[] keys, int threads, int seconds) {
+        LongAdder ops = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1000000000L;
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                while ((done & 1023) != 0 || System.nanoTime() < deadline) {
+                    String key = keys[random.nextInt(keys.length)];
+                    int dice = random.nextInt(4);
+                    try {
+                        if (dice < 2) dict.get(key);
+                        else if (dice == 2) dict.put(key, "y", 1);
+                        else dict.remove(key);
+                    } catch (DictionaryException e) {
+                        // Key already removed
+                    }
+                    done++;
+                }
+                ops.add(done);
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return ops.sum();
+    }
+
+    // Wraps a tree as an OrderedDictionary whose every call holds the tree's monitor
+    private static OrderedDictionary synchronizedOrdered(BSTOrderedDictionary d) {
+        return new OrderedDictionary() {
+            public synchronized int size() { return d.size(); }
+            public synchronized ArrayList<MultimediaItem> get(String k) { return d.get(k); }
+            public synchronized void put(String name, String content, int type) { d.put(name, content, type); }
+            public synchronized void remove(String k) throws DictionaryException { d.remove(k); }
+            public synchronized void remove(String k, int type) throws DictionaryException { d.remove(k, type); }
+            public synchronized Data successor(String k) { return d.successor(k); }
+            public synchronized Data predecessor(String k) { return d.predecessor(k); }
+            public synchronized Data smallest() { return d.smallest(); }
+            public synchronized Data largest() { return d.largest(); }
+            public synchronized ArrayList<Data> ascendingFrom(String k, int count) { return d.ascendingFrom(k, count); }
+            public synchronized ArrayList<Data> descendingFrom(String k, int count) { return d.descendingFrom(k, count); }
+            public synchronized void buildFromSorted(ArrayList<Data> sorted) { d.buildFromSorted(sorted); }
+        };
+    }
+
+    // Point lookups and range scans on a bulk-built red-black tree and B+-tree of n keys
+    private static void btreeLookups(int n) {
+        ArrayList<Data> sorted = new ArrayList<Data>(n);
+        for (String k : sortedKeyArray(n)) {
+            Data data = new Data(k);
+            data.add(new MultimediaItem("x", 1));
+            sorted.add(data);
+        }
+        System.out.println(n + " keys");
+
+        OrderedDictionary tree = new RedBlackOrderedDictionary();
+        tree.buildFromSorted(sorted);
+        lookupsAndScans("  red-black tree", tree, n);
+        tree = null;
+        System.gc(); // Only one structure is live at a time
+
+        OrderedDictionary btree = new BPlusTreeOrderedDictionary();
+        btree.buildFromSorted(sorted);
+        lookupsAndScans("  B+-tree", btree, n);
+    }
+
+    private static void lookupsAndScans(String label, OrderedDictionary dict, int n) {
+        int lookups = 1000000;
+        int scans = 1000;
+        Random random = new Random(42); // Same key sequence for every structure
+        String[] probes = new String[lookups];
+        for (int i = 0; i < lookups; i++) probes[i] = String.format("k%09d", random.nextInt(n));
+
+        long found = 0;
+        long start = System.nanoTime();
+        for (String k : probes) {
+            if (dict.get(k) != null) found++;
+        }
+        report(label + " get", lookups, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < scans; i++) found += dict.ascendingFrom(probes[i], 1000).size();
+        report(label + " 1,000-key scan", scans, System.nanoTime() - start);
+        if (found == 0) System.out.println("  (nothing found)"); // Keeps the loops from being optimized away
+    }
+
+    // Heap still in use after a full GC with the tree live, minus the same with only its keys live
+    private static void retainedHeap(int n) {
+        String[] keys = sortedKeyArray(n);
+        long baseline = usedHeapAfterGc();
+
+        RedBlackOrderedDictionary byPut = new RedBlackOrderedDictionary();
+        for (String k : keys) byPut.put(byPut.getRoot(), k, "x", 1);
+        long used = usedHeapAfterGc() - baseline;
+        System.out.printf("put:             %,d bytes retained, %.1f bytes/key%n", used, (double) used / n);
+        byPut = null;
+
+        ArrayList<Data> sorted = new ArrayList<Data>(n);
+        for (String k : keys) sorted.add(new Data(k));
+        RedBlackOrderedDictionary bulk = new RedBlackOrderedDictionary();
+        bulk.buildFromSorted(sorted);
+        sorted = null;
+        used = usedHeapAfterGc() - baseline;
+        System.out.printf("buildFromSorted: %,d bytes retained, %.1f bytes/key (no media)%n", used, (double) used / n);
+        if (bulk.size() != n) System.out.println("Lost keys");
+    }
+
+    // Same keys put into a red-black tree and the array-backed treap, one structure live at a time
+    private static void arrayFootprint(int n) {
+        String[] keys = sortedKeyArray(n);
+        long baseline = usedHeapAfterGc();
+
+        OrderedDictionary[] dicts = {new RedBlackOrderedDictionary(), new ArrayOrderedDictionary()};
+        for (int i = 0; i < dicts.length; i++) {
+            OrderedDictionary dict = dicts[i];
+            for (String k : keys) dict.put(k, "x", 1);
+            long used = usedHeapAfterGc() - baseline;
+
+            long start = System.nanoTime();
+            System.gc(); // A full collection has to trace everything the dictionary holds
+            long gcNanos = System.nanoTime() - start;
+
+            System.out.printf("%-26s %.1f bytes/key, full GC %.0f ms%n", dict.getClass().getName() + ":",
+                    (double) used / n, gcNanos / 1e6);
+            dicts[i] = null;
+            dict = null;
+        }
+    }
+
+    // Keys first on their own, then each dictionary holding the same keys and media
+    private static void keyFootprint(int scale) {
+        try {
+            File input = scaledCopy("large.txt", scale);
+            long baseline = usedHeapAfterGc();
+
+            RedBlackOrderedDictionary tree = new RedBlackOrderedDictionary();
+            new DictionaryLoader(1).load(input.getPath(), tree);
+            long treeBytes = usedHeapAfterGc() - baseline;
+
+            ArrayList<String> names = keyCopies(tree);
+            tree = null;
+            long stringBytes = usedHeapAfterGc() - baseline;
+            FrontCodedKeys coded = FrontCodedKeys.of(names);
+            int n = names.size();
+            names = null;
+            long codedBytes = usedHeapAfterGc() - baseline;
+
+            System.out.printf("large.txt x %d: %,d keys%n", scale, n);
+            System.out.printf("  keys as Strings in a list:  %.1f bytes/key%n", (double) stringBytes / n);
+            System.out.printf("  keys in FrontCodedKeys:     %.1f bytes/key (%.1f by its own count)%n",
+                    (double) codedBytes / n, (double) coded.bytes() / coded.size());
+            coded = null;
+
+            CompactOrderedDictionary compact = new CompactOrderedDictionary();
+            new DictionaryLoader(1).load(input.getPath(), compact);
+            long compactBytes = usedHeapAfterGc() - baseline;
+            System.out.printf("  RedBlackOrderedDictionary:  %.1f bytes/key%n", (double) treeBytes / n);
+            System.out.printf("  CompactOrderedDictionary:   %.1f bytes/key%n", (double) compactBytes / compact.size());
+            input.delete();
+        } catch (IOException e) {
+            System.out.println("Cannot build input file: " + e.getMessage());
+        }
+    }
+
+    // Copies of every key of dict in order, so that nothing else holds them
+    private static ArrayList<String> keyCopies(OrderedDictionary dict) {
+        ArrayList<String> names = new ArrayList<String>(dict.size());
+        for (Data data : dict.ascendingFrom("", dict.size())) names.add(new String(data.getName()));
+        return names;
+    }
+
+    // One backend at a time: load, measure what stays on the heap, then time collections
+    private static void offHeapPauses(int scale, int lookups) {
+        try {
+            File input = scaledCopy("large.txt", scale);
+            System.out.println("large.txt x " + scale);
+            long baseline = usedHeapAfterGc();
+
+            String[] backends = {"tree", "array", "offheap"};
+            for (String backend : backends) {
+                OrderedDictionary dict;
+                if (backend.equals("tree")) dict = new RedBlackOrderedDictionary();
+                else if (backend.equals("array")) dict = new ArrayOrderedDictionary();
+                else dict = new OffHeapOrderedDictionary();
+                new DictionaryLoader(1).load(input.getPath(), dict);
+                long retained = usedHeapAfterGc() - baseline;
+
+                long start = System.nanoTime();
+                System.gc();
+                long fullGc = System.nanoTime() - start;
+
+                // Lookups of keys at random ranks; each one leaves a little garbage behind
+                ArrayList<Data> probes = dict.ascendingFrom("", dict.size());
+                Random random = new Random(42);
+                long gcCount = gcCount();
+                long gcMillis = gcMillis();
+                start = System.nanoTime();
+                long found = 0;
+                for (int i = 0; i < lookups; i++) {
+                    String key = probes.get(random.nextInt(probes.size())).getName();
+                    if (dict.get(new String(key)) != null) found++;
+                }
+                long lookupNanos = System.nanoTime() - start;
+                probes = null;
+
+                System.out.printf("  %-8s heap %,d MB, full GC %.0f ms, %d lookups in %.2f s with %d GCs / %d ms paused%n",
+                        backend, retained >> 20, fullGc / 1e6, found, lookupNanos / 1e9,
+                        gcCount() - gcCount, gcMillis() - gcMillis);
+                dict = null;
+                usedHeapAfterGc();
+            }
+            input.delete();
+        } catch (IOException e) {
+            System.out.println("Cannot build input file: " + e.getMessage());
+        }
+    }
+
+    // Collections so far, over every collector
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) count += gc.getCollectionCount();
+        return count;
+    }
+
+    // Milliseconds spent collecting so far, over every collector
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) millis += gc.getCollectionTime();
+        return millis;
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    // The single-threaded load Query used before DictionaryLoader
+    private static void serialLoad(String inputFile, BSTOrderedDictionary dict) throws IOException {
+        ArrayList<String> keys = new ArrayList<String>();
+        ArrayList<MultimediaItem> items = new ArrayList<MultimediaItem>();
+        try (BufferedReader br = new BufferedReader(new FileReader(inputFile))) {
+            String keyLine;
+            while ((keyLine = br.readLine()) != null) {
+                String contentLine = br.readLine();
+                if (contentLine == null) break;
+                keys.add(keyLine.toLowerCase());
+                items.add(new MultimediaItem(contentLine, serialDetermineType(contentLine)));
+            }
+        }
+        dict.bulkLoad(keys, items);
+    }
+
+    // The type check Query used before DictionaryLoader, which lowercased a copy of the content
+    private static int serialDetermineType(String content) {
+        content = content.toLowerCase();
+        if (content.endsWith(".wav") || content.endsWith(".mid")) return 2;
+        if (content.endsWith(".jpg") || content.endsWith(".gif")) return 3;
+        if (content.endsWith(".html")) return 4;
+        return 1;
+    }
+
+    // Temporary copy of a key/content file repeated scale times; copy i suffixes each key with i
+    private static File scaledCopy(String inputFile, int scale) throws IOException {
+        ArrayList<String> lines = new ArrayList<String>();
+        try (BufferedReader br = new BufferedReader(new FileReader(inputFile))) {
+            String line;
+            while ((line = br.readLine()) != null) lines.add(line);
+        }
+
+        File out = File.createTempFile("bench", ".txt");
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(out))) {
+            for (int copy = 0; copy < scale; copy++) {
+                for (int i = 0; i + 1 < lines.size(); i += 2) {
+                    bw.write(copy == 0 ? lines.get(i) : lines.get(i) + copy);
+                    bw.newLine();
+                    bw.write(lines.get(i + 1));
+                    bw.newLine();
+                }
+            }
+        }
+        return out;
+    }
+
+    // Same tree and probes for both lookups; best of five rounds each
+    private static void compareLatency(int n, int lookups) {
+        int[] prefixLengths = {0, 16, 64};
+        for (int prefixLength : prefixLengths) {
+            StringBuilder prefix = new StringBuilder();
+            for (int i = 0; i < prefixLength; i++) prefix.append((char) ('a' + i % 26));
+
+            // Random 8-letter suffixes; sorting and dropping duplicates gives buildFromSorted its input
+            Random random = new Random(7);
+            TreeSet<String> keySet = new TreeSet<String>();
+            while (keySet.size() < n) {
+                StringBuilder key = new StringBuilder(prefix);
+                for (int i = 0; i < 8; i++) key.append((char) ('a' + random.nextInt(26)));
+                keySet.add(key.toString());
+            }
+            ArrayList<Data> sorted = new ArrayList<Data>(n);
+            for (String key : keySet) {
+                Data data = new Data(key);
+                data.add(new MultimediaItem("x", 1));
+                sorted.add(data);
+            }
+            RedBlackOrderedDictionary tree = new RedBlackOrderedDictionary();
+            tree.buildFromSorted(sorted);
+
+            String[] probes = new String[lookups];
+            String[] keys = keySet.toArray(new String[0]);
+            for (int i = 0; i < lookups; i++) probes[i] = new String(keys[random.nextInt(n)]); // Not the stored instance
+
+            long plainBest = Long.MAX_VALUE;
+            long probeBest = Long.MAX_VALUE;
+            long found = 0;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (String key : probes) if (plainGet(tree.getRoot(), key) != null) found++;
+                plainBest = Math.min(plainBest, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (String key : probes) if (tree.get(key) != null) found++;
+                probeBest = Math.min(probeBest, System.nanoTime() - start);
+            }
+            System.out.printf("prefix %2d chars: String.compareTo %.0f ns/lookup, SearchKey %.0f ns/lookup (%d found)%n",
+                    prefixLength, (double) plainBest / lookups, (double) probeBest / lookups, found);
+        }
+    }
+
+    // Each file decoded loads times without a cache, then loads times through one
+    private static void mediaLoads(int loads) {
+        String[] files = {"fireworks.wav", "matrix.gif", "fireworks.gif"};
+        try {
+            for (String file : files) {
+                long start = System.nanoTime();
+                for (int i = 0; i < loads; i++) decodeUncached(file);
+                long plain = System.nanoTime() - start;
+
+                MediaCache cache = new MediaCache(64L << 20);
+                start = System.nanoTime();
+                for (int i = 0; i < loads; i++) {
+                    if (file.endsWith(".wav")) cache.sound(file);
+                    else cache.image(file);
+                }
+                long cached = System.nanoTime() - start;
+                System.out.printf("%-14s decoded each time %.2f ms/load, cached %.3f ms/load (%d hits, %.1f MB held)%n",
+                        file, plain / 1e6 / loads, cached / 1e6 / loads, cache.hits(), cache.bytes() / 1048576.0);
+            }
+        } catch (Exception e) {
+            System.out.println("Cannot decode media: " + e.getMessage());
+        }
+    }
+
+    // A dictionary naming copies x 14 distinct files, so MediaValidator cannot probe a file just once
+    private static void validateMedia(int copies, int workers) {
+        String[] files = {"fireworks.wav", "lightning.wav", "loon.wav", "roar.wav", "spring.wav",
+                "computer.gif", "cube2.gif", "cute.gif", "dancing.gif", "fireworks.gif",
+                "lightning.gif", "matrix.gif", "programming.gif", "tree.gif"};
+        ArrayList<File> made = new ArrayList<File>();
+        try {
+            RedBlackOrderedDictionary dict = new RedBlackOrderedDictionary();
+            for (int copy = 0; copy < copies; copy++) {
+                for (String file : files) {
+                    File f = File.createTempFile("bench", file);
+                    made.add(f);
+                    java.nio.file.Files.copy(new File(file).toPath(), f.toPath(),
+                            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                    dict.put("k" + made.size(), f.getPath(), DictionaryLoader.determineType(file));
+                }
+            }
+
+            new MediaValidator(1).validate(dict); // Warm-up: loads the ImageIO and sound providers
+            for (int threads : new int[] {1, workers}) {
+                long start = System.nanoTime();
+                MediaValidator.Report report = new MediaValidator(threads).validate(dict);
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("probe, %2d threads: %d files in %.0f ms (%.3f ms/file, %d broken)%n",
+                        threads, report.files(), elapsed / 1e6, elapsed / 1e6 / report.files(), report.broken());
+            }
+
+            long start = System.nanoTime();
+            for (File f : made) decodeUncached(f.getPath());
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("full decode, 1 thread: %d files in %.0f ms (%.3f ms/file)%n",
+                    made.size(), elapsed / 1e6, elapsed / 1e6 / made.size());
+        } catch (Exception e) {
+            System.out.println("Cannot probe media: " + e.getMessage());
+        } finally {
+            for (File f : made) f.delete();
+        }
+    }
+
+    // The Clip path reads the whole file before the first sample can play; the streamer
+    // hands the sink its first chunk straight away. Both run on this thread.
+    private static void streaming(int seconds) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long self = Thread.currentThread().getId();
+        File wav = null;
+        try {
+            wav = File.createTempFile("bench", ".wav");
+            writeTone(wav, seconds);
+            System.out.printf("%d s of 44.1 kHz 16-bit stereo: %.1f MB%n", seconds, wav.length() / 1048576.0);
+
+            for (int pass = 0; pass < 2; pass++) { // First pass warms up the JIT
+                long before = threads.getThreadAllocatedBytes(self);
+                long start = System.nanoTime();
+                NullAudioSink clipSink = new NullAudioSink();
+                try (javax.sound.sampled.AudioInputStream in = javax.sound.sampled.AudioSystem.getAudioInputStream(wav)) {
+                    // What Clip.open(stream) does: every frame into one array, then playback starts
+                    byte[] all = new byte[(int) (in.getFrameLength() * in.getFormat().getFrameSize())];
+                    int off = 0, n;
+                    while (off < all.length && (n = in.read(all, off, all.length - off)) > 0) off += n;
+                    clipSink.open(in.getFormat(), all.length);
+                    clipSink.write(all, 0, off);
+                }
+                long clipFirst = clipSink.getFirstWriteNanos() - start;
+                long clipBytes = threads.getThreadAllocatedBytes(self) - before;
+
+                before = threads.getThreadAllocatedBytes(self);
+                start = System.nanoTime();
+                NullAudioSink streamSink = new NullAudioSink();
+                new AudioStreamer(streamSink).play(wav.getPath());
+                long streamFirst = streamSink.getFirstWriteNanos() - start;
+                long streamBytes = threads.getThreadAllocatedBytes(self) - before;
+
+                if (pass == 1) {
+                    System.out.printf("  Clip (whole file): first audio after %8.2f ms, %9.0f KB allocated%n",
+                            clipFirst / 1e6, clipBytes / 1024.0);
+                    System.out.printf("  AudioStreamer:     first audio after %8.2f ms, %9.0f KB allocated%n",
+                            streamFirst / 1e6, streamBytes / 1024.0);
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("Cannot stream: " + e.getMessage());
+        } finally {
+            if (wav != null) wav.delete();
+        }
+    }
+
+    // A 440 Hz tone, written one second at a time so the samples are never all in memory
+    private static void writeTone(File wav, int seconds) throws IOException {
+        javax.sound.sampled.AudioFormat format = new javax.sound.sampled.AudioFormat(44100, 16, 2, true, false);
+        InputStream tone = new InputStream() {
+            long frame = 0;
+            final long frames = 44100L * seconds;
+            final byte[] sample = new byte[4];
+            int pos = 4;
+
+            public int read() {
+                if (pos == 4) {
+                    if (frame == frames) return -1;
+                    short s = (short) (8000 * Math.sin(2 * Math.PI * 440 * frame++ / 44100.0));
+                    sample[0] = sample[2] = (byte) s;
+                    sample[1] = sample[3] = (byte) (s >> 8);
+                    pos = 0;
+                }
+                return sample[pos++] & 0xff;
+            }
+        };
+        javax.sound.sampled.AudioSystem.write(new javax.sound.sampled.AudioInputStream(new BufferedInputStream(tone, 176400),
+                format, 44100L * seconds), javax.sound.sampled.AudioFileFormat.Type.WAVE, wav);
+    }
+
+    // What SoundPlayer and PictureViewer did on every call before MediaCache
+    private static void decodeUncached(String file) throws Exception {
+        if (file.endsWith(".wav")) {
+            try (javax.sound.sampled.AudioInputStream in =
+                    javax.sound.sampled.AudioSystem.getAudioInputStream(new File(file).getAbsoluteFile())) {
+                byte[] buffer = new byte[64 * 1024];
+                while (in.read(buffer) > 0) {
+                    // Decode everything, as Clip.open does
+                }
+            }
+        } else {
+            new javax.swing.ImageIcon(file).getImage().flush(); // Do not let the toolkit's image cache answer
+        }
+    }
+
+    // Results go to the null device, so what is timed is the command loop and its output calls
+    private static void batchReplay(int scale, int commands, int workers) {
+        File input = null;
+        File script = null;
+        try {
+            input = scaledCopy("large.txt", scale);
+            ArrayList<String> words = new ArrayList<String>();
+            try (BufferedReader br = new BufferedReader(new FileReader(input))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    words.add(line.toLowerCase());
+                    br.readLine(); // Skip the content line
+                }
+            }
+
+            Random random = new Random(5);
+            script = File.createTempFile("bench", ".cmd");
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(script))) {
+                for (int i = 0; i < commands; i++) {
+                    String word = words.get(random.nextInt(words.size()));
+                    int pick = random.nextInt(100);
+                    if (pick < 1) bw.write("add " + word + " extra" + i + " 1");
+                    else if (pick < 2) bw.write("delete " + word + " 1");
+                    else if (pick < 70) bw.write("get " + word);
+                    else bw.write((pick < 85 ? "next " : "prev ") + word + " " + (1 + random.nextInt(10)));
+                    bw.newLine();
+                }
+            }
+            System.out.printf("large.txt x %d: %,d keys, %,d commands, %d workers%n", scale, words.size(), commands, workers);
+            words = null;
+
+            File nul = new File("/dev/null");
+            for (int run = 0; run < 4; run++) { // Run 0 warms up the JIT
+                Query query = new Query(input.getPath(), workers);
+                query.useRangeCache(0); // Measure the commands, not cache hits on repeats
+                long start = System.nanoTime();
+                if (run <= 1) {
+                    // Query.main's loop: one println, flushed, per result
+                    try (BufferedReader in = new BufferedReader(new FileReader(script));
+                            PrintStream out = new PrintStream(new FileOutputStream(nul), true)) {
+                        String command;
+                        while ((command = in.readLine()) != null) {
+                            String result = query.processCommand(command);
+                            if (result != null && !result.isEmpty()) out.println(result);
+                        }
+                    }
+                } else {
+                    try (BufferedReader in = new BufferedReader(new FileReader(script), 1 << 16);
+                            Writer out = new BufferedWriter(new FileWriter(nul), 1 << 16)) {
+                        query.runBatch(in, out, run == 3);
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                query.close();
+                String[] names = {"", "interactive loop", "runBatch", "runBatch -parallel"};
+                if (run > 0) System.out.printf("  %-18s %,.0f commands/s%n", names[run], commands / (nanos / 1e9));
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot build input file: " + e.getMessage());
+        } finally {
+            if (input != null) input.delete();
+            if (script != null) script.delete();
+        }
+    }
+
+    // The same command stream against each cache size; the first run is discarded as warm-up
+    private static void rangeCacheMix(int scale, int distinct, int commands) {
+        File input;
+        ArrayList<String> words = new ArrayList<String>();
+        try {
+            input = scaledCopy("large.txt", scale);
+            try (BufferedReader br = new BufferedReader(new FileReader(input))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    words.add(line.toLowerCase());
+                    br.readLine(); // Skip the content line
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot build input file: " + e.getMessage());
+            return;
+        }
+
+        // Popularity ranks 0 .. distinct-1 map to random next/prev queries; rank i is drawn with weight 1/(i+1)
+        Random random = new Random(3);
+        String[] queries = new String[distinct];
+        for (int i = 0; i < distinct; i++) {
+            String word = words.get(random.nextInt(words.size()));
+            queries[i] = (random.nextBoolean() ? "next " : "prev ") + word + " " + (1 + random.nextInt(50));
+        }
+        double[] cumulative = new double[distinct];
+        double total = 0;
+        for (int i = 0; i < distinct; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        String[] stream = new String[commands];
+        for (int i = 0; i < commands; i++) {
+            if (random.nextInt(100) == 0) {
+                stream[i] = "add " + words.get(random.nextInt(words.size())) + " extra" + i + " 1";
+            } else {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                stream[i] = queries[(rank >= 0) ? rank : Math.min(-rank - 1, distinct - 1)];
+            }
+        }
+
+        System.out.printf("large.txt x %d: %,d keys, %,d distinct queries%n", scale, words.size(), distinct);
+        words = null;
+        int[] capacities = {1024, 0, 256, 1024, 4096};
+        for (int run = 0; run < capacities.length; run++) {
+            Query query = new Query(input.getPath(), 1);
+            query.useRangeCache(capacities[run]);
+            long start = System.nanoTime();
+            for (String command : stream) query.processCommand(command);
+            long nanos = System.nanoTime() - start;
+            if (run == 0) continue;
+            System.out.printf("  cache %4d: %.0f commands/s  %s%n", capacities[run], commands / (nanos / 1e9),
+                    query.processCommand("stats"));
+        }
+        input.delete();
+    }
+
+    // One tree, measured without and then with its hash index
+    private static void hashIndexCost(int n, int lookups) {
+        String[] keys = sortedKeyArray(n);
+        ArrayList<Data> sorted = new ArrayList<Data>(n);
+        for (String key : keys) {
+            Data data = new Data(key);
+            data.add(new MultimediaItem("x", 1));
+            sorted.add(data);
+        }
+        RedBlackOrderedDictionary tree = new RedBlackOrderedDictionary();
+        tree.buildFromSorted(sorted);
+        sorted = null;
+
+        // Fresh instances, so each lookup hashes its key as a typed command would
+        Random random = new Random(11);
+        String[] probes = new String[lookups];
+        for (int i = 0; i < lookups; i++) probes[i] = new String(keys[random.nextInt(n)].toCharArray());
+        keys = null;
+
+        long before = usedHeapAfterGc();
+        long treeNanos = timeGets(tree, probes);
+        tree.setHashIndex(true);
+        long indexBytes = usedHeapAfterGc() - before;
+        long indexNanos = timeGets(tree, probes);
+
+        System.out.printf("%,d keys: hash index costs %.1f bytes/key%n", n, (double) indexBytes / n);
+        System.out.printf("  get through the tree:  %.0f ns%n", (double) treeNanos / lookups);
+        System.out.printf("  get through the index: %.0f ns%n", (double) indexNanos / lookups);
+    }
+
+    // Best of five rounds of get over every probe, in nanoseconds
+    private static long timeGets(OrderedDictionary dict, String[] probes) {
+        long best = Long.MAX_VALUE;
+        long found = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (String key : probes) if (dict.get(key) != null) found++;
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        if (found != 5L * probes.length) System.out.println("  (missing keys: " + (5L * probes.length - found) + ")");
+        return best;
+    }
+
+    // The lookup BSTOrderedDictionary.get used before SearchKey
+    private static ArrayList<MultimediaItem> plainGet(BSTNode r, String key) {
+        BSTNode curr = r;
+        while (!curr.isLeaf()) {
+            int cmp = key.compareTo(curr.getData().getName());
+            if (cmp == 0) return curr.getData().getMedia();
+            curr = (cmp < 0) ? curr.getLeftChild() : curr.getRightChild();
+        }
+        return null;
+    }
+
+    // The recursive insert that BSTOrderedDictionary.put used before it became a loop
+    private static void recursivePut(BSTNode r, String key) {
+        if (r.isLeaf()) {
+            r.setData(new Data(key));
+            r.getData().add(new MultimediaItem("x", 1));
+            BSTNode leftLeaf = new BSTNode();
+            leftLeaf.setParent(r);
+            r.setLeftChild(leftLeaf);
+            BSTNode rightLeaf = new BSTNode();
+            rightLeaf.setParent(r);
+            r.setRightChild(rightLeaf);
+            return;
+        }
+        int cmp = key.compareTo(r.getData().getName());
+        if (cmp == 0) r.getData().add(new MultimediaItem("x", 1));
+        else if (cmp < 0) recursivePut(r.getLeftChild(), key);
+        else recursivePut(r.getRightChild(), key);
+    }
+
+    // The recursive lookup that BSTOrderedDictionary.get used before it became a loop
+    private static ArrayList<MultimediaItem> recursiveGet(BSTNode r, String key) {
+        if (r == null || r.isLeaf()) return null;
+        int cmp = key.compareTo(r.getData().getName());
+        if (cmp == 0) return r.getData().getMedia();
+        if (cmp < 0) return recursiveGet(r.getLeftChild(), key);
+        return recursiveGet(r.getRightChild(), key);
+    }
+
+    // Keys "k000000000", "k000000001", ... which sort in numeric order
+    private static String[] sortedKeyArray(int n) {
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) keys[i] = String.format("k%09d", i);
+        return keys;
+    }
+
+    // Parse an optional integer argument
+    private static int intArg(String[] args, int index, int defaultValue) {
+        if (args.length <= index) return defaultValue;
+        return Integer.parseInt(args[index]);
+    }
+
+    // Print operations per second for a timed run
+    private static void report(String label, long operations, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.printf("%s: %d ops in %.3f s (%.0f ops/s)%n", label, operations, seconds, operations / seconds);
+    }
+}
@@ -0,0 +1,199 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+/*
+ * Ordered dictionary whose keys are kept front-coded. The bulk of the keys sit in
+ * an immutable FrontCodedKeys (the base), with each key's media list in an array
+ * indexed by the key's rank; keys put since the base was built go to a small
+ * TreeMap (the delta). Every key is stored exactly once, in the base or the delta.
+ *
+ * Removing a base key only drops its media list (a tombstone), and putting it
+ * again revives the slot. When the delta grows past an eighth of the base (and at
+ * least MIN_DELTA keys), or tombstones pass an eighth of the base, base and delta
+ * are merged into a new base without the tombstones, so the cost of re-encoding
+ * is spread over many puts or removes, and neighbour queries never skip more than
+ * an eighth of the base. buildFromSorted encodes directly.
+ *
+ * Data returned by the neighbour queries hold copies of the media lists; get
+ * returns the dictionary's own list, as BSTOrderedDictionary does.
+ */
+public class CompactOrderedDictionary implements OrderedDictionary {
+
+    private static final int MIN_DELTA = 1024; // Delta size below which it is never merged
+
+    private FrontCodedKeys base;
+    private Object[] baseMedia;   // ArrayList<MultimediaItem> per base rank, null once removed
+    private int liveBase;         // Base keys not removed
+    private TreeMap<String, ArrayList<MultimediaItem>> delta = new TreeMap<String, ArrayList<MultimediaItem>>();
+
+    public CompactOrderedDictionary() {
+        buildFromSorted(new ArrayList<Data>());
+    }
+
+    public int size() {
+        return liveBase + delta.size();
+    }
+
+    // Number of keys in the front-coded base, removed ones included
+    public int baseSize() {
+        return base.size();
+    }
+
+    // Approximate bytes used by the base key encoding
+    public long keyBytes() {
+        return base.bytes();
+    }
+
+    public ArrayList<MultimediaItem> get(String key) {
+        ArrayList<MultimediaItem> list = delta.get(key);
+        if (list != null) return list;
+        int rank = base.indexOf(key);
+        return (rank >= 0) ? mediaAt(rank) : null;
+    }
+
+    public void put(String key, String content, int type) {
+        MultimediaItem item = new MultimediaItem(content, type);
+        int rank = base.indexOf(key);
+        if (rank >= 0) {
+            if (baseMedia[rank] == null) {
+                baseMedia[rank] = new ArrayList<MultimediaItem>(1); // Revive a removed base key
+                liveBase++;
+            }
+            mediaAt(rank).add(item);
+            return;
+        }
+
+        ArrayList<MultimediaItem> list = delta.get(key);
+        if (list == null) {
+            list = new ArrayList<MultimediaItem>(1); // Most keys have a single item
+            delta.put(key, list);
+        }
+        list.add(item);
+        if (delta.size() > Math.max(MIN_DELTA, base.size() / 8)) compact();
+    }
+
+    public void remove(String key) throws DictionaryException {
+        if (delta.remove(key) != null) return;
+        int rank = base.indexOf(key);
+        if (rank < 0 || baseMedia[rank] == null) throw new DictionaryException("Key not found.");
+        baseMedia[rank] = null;
+        liveBase--;
+        if (base.size() - liveBase > base.size() / 8) compact(); // Too many tombstones to skip
+    }
+
+    // Remove the media of the given type from key, and key itself if nothing remains
+    public void remove(String key, int type) throws DictionaryException {
+        ArrayList<MultimediaItem> list = get(key);
+        if (list == null) throw new DictionaryException("Key not found.");
+
+        list.removeIf(item -> item.getType() == type); // Remove media items matching type
+        if (list.isEmpty()) remove(key);
+    }
+
+    public Data successor(String key) {
+        ArrayList<Data> next = ascendingFrom(key, 2);
+        if (!next.isEmpty() && next.get(0).getName().equals(key)) next.remove(0);
+        return next.isEmpty() ? null : next.get(0);
+    }
+
+    public Data predecessor(String key) {
+        ArrayList<Data> prev = descendingFrom(key, 2);
+        if (!prev.isEmpty() && prev.get(0).getName().equals(key)) prev.remove(0);
+        return prev.isEmpty() ? null : prev.get(0);
+    }
+
+    public Data smallest() {
+        ArrayList<Data> first = ascendingFrom("", 1);
+        return first.isEmpty() ? null : first.get(0);
+    }
+
+    public Data largest() {
+        int rank = liveBefore(base.size() - 1);
+        String baseKey = (rank < 0) ? null : base.key(rank);
+        if (delta.isEmpty()) return (baseKey == null) ? null : dataOf(baseKey, mediaAt(rank));
+
+        String deltaKey = delta.lastKey();
+        if (baseKey == null || deltaKey.compareTo(baseKey) > 0) return dataOf(deltaKey, delta.get(deltaKey));
+        return dataOf(baseKey, mediaAt(rank));
+    }
+
+    // Merge the live base keys >= key with the delta's
+    public ArrayList<Data> ascendingFrom(String key, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        int rank = liveFrom(base.ceiling(key));
+        Iterator<String> deltaKeys = delta.tailMap(key, true).keySet().iterator();
+        String deltaKey = deltaKeys.hasNext() ? deltaKeys.next() : null;
+
+        while (result.size() < count && (rank < base.size() || deltaKey != null)) {
+            String baseKey = (rank < base.size()) ? base.key(rank) : null;
+            if (deltaKey == null || (baseKey != null && baseKey.compareTo(deltaKey) < 0)) {
+                result.add(dataOf(baseKey, mediaAt(rank)));
+                rank = liveFrom(rank + 1);
+            } else {
+                result.add(dataOf(deltaKey, delta.get(deltaKey)));
+                deltaKey = deltaKeys.hasNext() ? deltaKeys.next() : null;
+            }
+        }
+        return result;
+    }
+
+    // Merge the live base keys <= key with the delta's, largest first
+    public ArrayList<Data> descendingFrom(String key, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        int rank = liveBefore(base.floor(key));
+        Iterator<String> deltaKeys = delta.headMap(key, true).descendingKeySet().iterator();
+        String deltaKey = deltaKeys.hasNext() ? deltaKeys.next() : null;
+
+        while (result.size() < count && (rank >= 0 || deltaKey != null)) {
+            String baseKey = (rank >= 0) ? base.key(rank) : null;
+            if (deltaKey == null || (baseKey != null && baseKey.compareTo(deltaKey) > 0)) {
+                result.add(dataOf(baseKey, mediaAt(rank)));
+                rank = liveBefore(rank - 1);
+            } else {
+                result.add(dataOf(deltaKey, delta.get(deltaKey)));
+                deltaKey = deltaKeys.hasNext() ? deltaKeys.next() : null;
+            }
+        }
+        return result;
+    }
+
+    // Replace the contents with a new base; each Data's media list becomes the dictionary's
+    public void buildFromSorted(ArrayList<Data> sorted) {
+        ArrayList<String> names = new ArrayList<String>(sorted.size());
+        for (Data data : sorted) names.add(data.getName());
+        base = FrontCodedKeys.of(names);
+        baseMedia = new Object[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) baseMedia[i] = sorted.get(i).getMedia();
+        liveBase = sorted.size();
+        delta.clear();
+    }
+
+    // Fold the delta into the base and drop removed base keys
+    public void compact() {
+        buildFromSorted(ascendingFrom("", size()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ArrayList<MultimediaItem> mediaAt(int rank) {
+        return (ArrayList<MultimediaItem>) baseMedia[rank];
+    }
+
+    // First rank >= rank whose key has not been removed, or base.size()
+    private int liveFrom(int rank) {
+        while (rank < base.size() && baseMedia[rank] == null) rank++;
+        return rank;
+    }
+
+    // Last rank <= rank whose key has not been removed, or -1
+    private int liveBefore(int rank) {
+        while (rank >= 0 && baseMedia[rank] == null) rank--;
+        return rank;
+    }
+
+    private static Data dataOf(String key, ArrayList<MultimediaItem> items) {
+        Data data = new Data(key);
+        for (MultimediaItem item : items) data.add(item);
+        return data;
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+/*
+ * Thread-safe ordered dictionary for read-mostly workloads. It wraps a
+ * RedBlackOrderedDictionary behind a StampedLock:
+ *   - put and both removes take the write lock,
+ *   - get, successor, predecessor, smallest and largest first run as an optimistic
+ *     read with no lock at all, and only if a writer ran meanwhile (or the torn
+ *     tree made the walk fail) retry under the read lock.
+ * Optimistic walks are plain descents from the root with a step limit, so a tree
+ * caught half-way through a rotation can never loop them forever.
+ *
+ * Range scans (ascendingFrom, descendingFrom) walk many nodes and would rarely
+ * validate, so they take the read lock directly. Keys are compared through
+ * SearchKey, as in the other backends.
+ *
+ * Every operation works on the whole dictionary; the BSTNode argument of the ADT
+ * methods is ignored because a caller-held node may be rotated away at any time.
+ * get returns a copy of the media list so it stays consistent after the call.
+ * It is also an OrderedDictionary, so Query can use it ("-backend concurrent").
+ */
+public class ConcurrentOrderedDictionary implements BSTOrderedDictionaryADT, OrderedDictionary {
+
+    // A red-black tree of 2^31 keys is at most 62 levels deep; more steps means a torn read
+    private static final int MAX_STEPS = 64;
+
+    private final RedBlackOrderedDictionary tree = new RedBlackOrderedDictionary();
+    private final StampedLock lock = new StampedLock();
+
+    public ConcurrentOrderedDictionary() {
+    }
+
+    // Root of the underlying tree; only safe to traverse while no writer is active
+    public BSTNode getRoot() {
+        return read(root -> root);
+    }
+
+    public int getNumInternalNodes() {
+        return read(root -> root.getSize());
+    }
+
+    public int size() {
+        return read(root -> root.getSize());
+    }
+
+    // Copy of the media list for key, or null if the key is absent
+    public ArrayList<MultimediaItem> get(String key) {
+        SearchKey search = new SearchKey(key);
+        return read(root -> {
+            BSTNode curr = root;
+            for (int steps = 0; !curr.isLeaf(); steps++) {
+                checkSteps(steps);
+                int cmp = search.compareTo(curr.getData());
+                if (cmp == 0) return new ArrayList<MultimediaItem>(curr.getData().getMedia());
+                curr = (cmp < 0) ? curr.getLeftChild() : curr.getRightChild();
+            }
+            return null;
+        });
+    }
+
+    public ArrayList<MultimediaItem> get(BSTNode r, String key) {
+        return get(key);
+    }
+
+    public void put(BSTNode r, String name, String content, int type) {
+        put(name, content, type);
+    }
+
+    public void put(String name, String content, int type) {
+        long stamp = lock.writeLock();
+        try {
+            tree.put(tree.getRoot(), name, content, type);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(BSTNode r, String k) throws DictionaryException {
+        remove(k);
+    }
+
+    public void remove(String k) throws DictionaryException {
+        long stamp = lock.writeLock();
+        try {
+            tree.remove(tree.getRoot(), k);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(BSTNode r, String k, int type) throws DictionaryException {
+        remove(k, type);
+    }
+
+    public void remove(String k, int type) throws DictionaryException {
+        long stamp = lock.writeLock();
+        try {
+            tree.remove(tree.getRoot(), k, type);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public Data successor(BSTNode r, String k) {
+        return successor(k);
+    }
+
+    // Smallest key strictly greater than k
+    public Data successor(String k) {
+        SearchKey search = new SearchKey(k);
+        return read(root -> {
+            Data result = null;
+            BSTNode curr = root;
+            for (int steps = 0; !curr.isLeaf(); steps++) {
+                checkSteps(steps);
+                if (search.compareTo(curr.getData()) < 0) {
+                    result = curr.getData(); // Potential successor
+                    curr = curr.getLeftChild();
+                } else {
+                    curr = curr.getRightChild();
+                }
+            }
+            return result;
+        });
+    }
+
+    public Data predecessor(BSTNode r, String k) {
+        return predecessor(k);
+    }
+
+    // Largest key strictly less than k
+    public Data predecessor(String k) {
+        SearchKey search = new SearchKey(k);
+        return read(root -> {
+            Data result = null;
+            BSTNode curr = root;
+            for (int steps = 0; !curr.isLeaf(); steps++) {
+                checkSteps(steps);
+                if (search.compareTo(curr.getData()) > 0) {
+                    result = curr.getData(); // Potential predecessor
+                    curr = curr.getRightChild();
+                } else {
+                    curr = curr.getLeftChild();
+                }
+            }
+            return result;
+        });
+    }
+
+    public Data smallest(BSTNode r) {
+        return smallest();
+    }
+
+    public Data smallest() {
+        return read(root -> {
+            if (root.isLeaf()) return null;
+            BSTNode curr = root;
+            for (int steps = 0; !curr.getLeftChild().isLeaf(); steps++) {
+                checkSteps(steps);
+                curr = curr.getLeftChild();
+            }
+            return curr.getData();
+        });
+    }
+
+    public Data largest(BSTNode r) {
+        return largest();
+    }
+
+    public Data largest() {
+        return read(root -> {
+            if (root.isLeaf()) return null;
+            BSTNode curr = root;
+            for (int steps = 0; !curr.getRightChild().isLeaf(); steps++) {
+                checkSteps(steps);
+                curr = curr.getRightChild();
+            }
+            return curr.getData();
+        });
+    }
+
+    public ArrayList<Data> ascendingFrom(String k, int count) {
+        long stamp = lock.readLock();
+        try {
+            return tree.ascendingFrom(k, count);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public ArrayList<Data> descendingFrom(String k, int count) {
+        long stamp = lock.readLock();
+        try {
+            return tree.descendingFrom(k, count);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void buildFromSorted(ArrayList<Data> sorted) {
+        long stamp = lock.writeLock();
+        try {
+            tree.buildFromSorted(sorted);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Run op on the current root optimistically, falling back to the read lock
+    private <T> T read(Function<BSTNode, T> op) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = op.apply(tree.getRoot());
+                if (lock.validate(stamp)) return result;
+            } catch (RuntimeException e) {
+                // Saw a tree mid-update (null link or step limit); retry under the lock
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return op.apply(tree.getRoot());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Abort an optimistic walk that is longer than any consistent tree allows
+    private static void checkSteps(int steps) {
+        if (steps > MAX_STEPS) throw new IllegalStateException("Inconsistent tree walk");
+    }
+}
@@ -4,10 +4,12 @@ public class Data {
     
     private String name; // The key or identifier for this data node
     private ArrayList<MultimediaItem> media; // List of multimedia items associated with this key
+    private long prefix; // First chars of name packed for quick comparisons (see SearchKey)
 
     // Constructor: initializes the data with a name and empty media list
     public Data(String newName) {
         this.name = newName; // Set the key
+        this.prefix = SearchKey.prefixOf(newName);
         this.media = new ArrayList<MultimediaItem>(); // Initialize empty list of media
     }
 
@@ -21,6 +23,11 @@ public class Data {
         return name;
     }
 
+    // Returns the packed prefix of the name used by SearchKey
+    public long getPrefix() {
+        return prefix;
+    }
+
     // Returns the list of multimedia items associated with this data
     public ArrayList<MultimediaItem> getMedia() {
         return media;
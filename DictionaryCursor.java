@@ -0,0 +1,121 @@
+/*
+ * Bidirectional cursor over a BSTOrderedDictionary. A seek descends from the root
+ * once; after that next() and previous() follow child and parent pointers, so
+ * walking d keys costs O(h + d) instead of one root descent per key.
+ *
+ * The cursor holds a reference to a tree node, so it must not be used after the
+ * dictionary has been modified; seek again instead.
+ */
+public class DictionaryCursor {
+
+    private BSTOrderedDictionary dict; // Dictionary being traversed
+    private BSTNode current;           // Internal node under the cursor, or null if off the end
+
+    // Creates a cursor that is not yet positioned
+    public DictionaryCursor(BSTOrderedDictionary newDict) {
+        this.dict = newDict;
+        this.current = null;
+    }
+
+    // Position on the smallest key >= key; returns false if there is none
+    public boolean seekCeiling(String key) {
+        current = null;
+        SearchKey probe = new SearchKey(key);
+        BSTNode curr = dict.getRoot();
+        while (curr != null && !curr.isLeaf()) {
+            int cmp = probe.compareTo(curr.getData());
+            if (cmp == 0) {
+                current = curr; // Exact match
+                return true;
+            }
+            if (cmp < 0) {
+                current = curr; // Potential ceiling
+                curr = curr.getLeftChild();
+            } else {
+                curr = curr.getRightChild();
+            }
+        }
+        return current != null;
+    }
+
+    // Position on the largest key <= key; returns false if there is none
+    public boolean seekFloor(String key) {
+        current = null;
+        SearchKey probe = new SearchKey(key);
+        BSTNode curr = dict.getRoot();
+        while (curr != null && !curr.isLeaf()) {
+            int cmp = probe.compareTo(curr.getData());
+            if (cmp == 0) {
+                current = curr; // Exact match
+                return true;
+            }
+            if (cmp > 0) {
+                current = curr; // Potential floor
+                curr = curr.getRightChild();
+            } else {
+                curr = curr.getLeftChild();
+            }
+        }
+        return current != null;
+    }
+
+    // Returns true if the cursor is on a key
+    public boolean isValid() {
+        return current != null;
+    }
+
+    // Data under the cursor, or null if the cursor is off the end
+    public Data getData() {
+        return (current == null) ? null : current.getData();
+    }
+
+    // Move to the next larger key; returns false (and goes off the end) if there is none
+    public boolean next() {
+        if (current == null) return false;
+
+        if (!current.getRightChild().isLeaf()) {
+            // Leftmost node of the right subtree
+            BSTNode curr = current.getRightChild();
+            while (!curr.getLeftChild().isLeaf()) {
+                curr = curr.getLeftChild();
+            }
+            current = curr;
+            return true;
+        }
+
+        // Go up until we arrive from a left child
+        BSTNode child = current;
+        BSTNode parent = current.getParent();
+        while (parent != null && parent.getRightChild() == child) {
+            child = parent;
+            parent = parent.getParent();
+        }
+        current = parent;
+        return current != null;
+    }
+
+    // Move to the next smaller key; returns false (and goes off the end) if there is none
+    public boolean previous() {
+        if (current == null) return false;
+
+        if (!current.getLeftChild().isLeaf()) {
+            // Rightmost node of the left subtree
+            BSTNode curr = current.getLeftChild();
+            while (!curr.getRightChild().isLeaf()) {
+                curr = curr.getRightChild();
+            }
+            current = curr;
+            return true;
+        }
+
+        // Go up until we arrive from a right child
+        BSTNode child = current;
+        BSTNode parent = current.getParent();
+        while (parent != null && parent.getLeftChild() == child) {
+            child = parent;
+            parent = parent.getParent();
+        }
+        current = parent;
+        return current != null;
+    }
+}
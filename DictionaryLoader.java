@@ -0,0 +1,204 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+ * Loads a key/content input file into a dictionary in three pipelined stages:
+ *   1. the calling thread memory-maps the file and scans the bytes for newlines,
+ *      cutting it into record-aligned chunks without decoding anything,
+ *   2. a fork-join pool decodes each chunk, lowercasing keys while copying them out
+ *      of the mapping and classifying content, one task per chunk,
+ *   3. the parsed chunks are concatenated in file order and bulk-loaded.
+ * Chunks keep their file order, so items under a repeated key end up in the same
+ * order as with a serial load. Lines end in "\n" or "\r\n".
+ */
+public class DictionaryLoader {
+
+    private static final int CHUNK_RECORDS = 4096; // Key/content pairs handed to a worker at a time
+    private static final long MAX_REGION = Integer.MAX_VALUE; // Largest single mapping
+
+    private int workers; // Parallelism of the parsing stage
+
+    // Creates a loader whose parsing stage runs on the given number of threads
+    public DictionaryLoader(int newWorkers) {
+        if (newWorkers < 1) newWorkers = 1;
+        this.workers = newWorkers;
+    }
+
+    // Returns the number of parsing threads
+    public int getWorkers() {
+        return workers;
+    }
+
+    // Determines the type of a multimedia item based on file extension or content
+    public static int determineType(String content) {
+        // Every recognized extension has a '.' four or five characters from the end
+        int len = content.length();
+        boolean dot4 = len >= 4 && content.charAt(len - 4) == '.';
+        boolean dot5 = len >= 5 && content.charAt(len - 5) == '.';
+        if (!dot4 && !dot5) return 1; // Text
+
+        // Case-insensitive suffix checks, without building a lowercase copy of the content
+        if (endsWithIgnoreCase(content, ".wav") || endsWithIgnoreCase(content, ".mid")) return 2; // Audio
+        if (endsWithIgnoreCase(content, ".jpg") || endsWithIgnoreCase(content, ".gif")) return 3; // Image
+        if (endsWithIgnoreCase(content, ".html")) return 4; // HTML
+        return 1; // Text by default
+    }
+
+    // Read inputFile and replace the contents of dict with its records
+    public void load(String inputFile, OrderedDictionary dict) throws IOException {
+        // With one worker there is nothing to overlap, so chunks are parsed on the calling thread
+        ForkJoinPool pool = (workers > 1) ? new ForkJoinPool(workers) : null;
+        ArrayList<Future<ParsedChunk>> parsed = new ArrayList<Future<ParsedChunk>>();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ)) {
+            // Stage 1: find line ends in the mapped bytes and hand off chunks of whole records
+            long fileSize = channel.size();
+            long base = 0;
+            while (base < fileSize) {
+                long length = Math.min(fileSize - base, MAX_REGION);
+                boolean lastRegion = (base + length == fileSize);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, base, length);
+
+                int chunkStart = 0;                        // Offset where the current chunk begins
+                int[] ends = new int[2 * CHUNK_RECORDS];   // Newline offsets of the current chunk
+                int lines = 0;
+                int i = 0;
+                while (i < length) {
+                    // Test eight bytes at a time for a newline and only look closer on a hit
+                    // Sums in long: near a 2 GB region end, i + 8 would overflow an int
+                    if ((long) i + 8 <= length && !hasNewline(region.getLong(i))) {
+                        i += 8;
+                        continue;
+                    }
+                    int stop = (int) Math.min((long) i + 8, length);
+                    for (; i < stop; i++) {
+                        if (region.get(i) != '\n') continue;
+                        ends[lines++] = i;
+                        if (lines == ends.length) {
+                            parsed.add(submit(pool, region, chunkStart, ends, lines));
+                            chunkStart = i + 1;
+                            ends = new int[2 * CHUNK_RECORDS];
+                            lines = 0;
+                        }
+                    }
+                }
+
+                if (lastRegion) {
+                    // Whatever is left, including a final line without a trailing newline
+                    int lineStart = (lines == 0) ? chunkStart : ends[lines - 1] + 1;
+                    if (lineStart < length) ends[lines++] = (int) length;
+                    if (lines > 0) parsed.add(submit(pool, region, chunkStart, ends, lines));
+                } else {
+                    // Re-map from the first incomplete record so no record straddles two mappings
+                    if (lines % 2 == 1) lines--;
+                    int recordEnd = (lines == 0) ? chunkStart : ends[lines - 1] + 1;
+                    if (recordEnd == 0) throw new IOException("Record too large to map in " + inputFile);
+                    if (lines > 0) parsed.add(submit(pool, region, chunkStart, ends, lines));
+                    length = recordEnd;
+                }
+                base += length;
+            }
+
+            // Stage 3: merge in file order and build the tree
+            ArrayList<String> keys = new ArrayList<String>();
+            ArrayList<MultimediaItem> items = new ArrayList<MultimediaItem>();
+            for (Future<ParsedChunk> f : parsed) {
+                ParsedChunk chunk = f.get();
+                for (int i = 0; i < chunk.records; i++) {
+                    keys.add(chunk.keys[i]);
+                    items.add(chunk.items[i]);
+                }
+            }
+            dict.bulkLoad(keys, items);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + inputFile);
+        } catch (ExecutionException e) {
+            throw new IOException("Error parsing " + inputFile + ": " + e.getCause());
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+    }
+
+    // Stage 2: parse the lines of a chunk on the pool, or right away without one
+    private Future<ParsedChunk> submit(ForkJoinPool pool, MappedByteBuffer region, int start, int[] ends, int lines) {
+        if (pool == null) return CompletableFuture.completedFuture(parse(region, start, ends, lines));
+        return pool.submit(() -> parse(region, start, ends, lines));
+    }
+
+    // Decode alternating key and content lines; a trailing key without content is dropped
+    private static ParsedChunk parse(MappedByteBuffer region, int start, int[] ends, int lines) {
+        ParsedChunk chunk = new ParsedChunk();
+        byte[] line = new byte[256]; // Reused for every line of the chunk
+        String key = null;
+        int pos = start;
+
+        for (int j = 0; j < lines; j++) {
+            int eol = ends[j];
+            int next = eol + 1;
+            if (eol > pos && region.get(eol - 1) == '\r') eol--; // Windows line ending
+
+            int length = eol - pos;
+            if (line.length < length) line = new byte[Math.max(length, 2 * line.length)];
+            region.get(pos, line, 0, length);
+
+            if (key == null) {
+                key = decodeLowerCase(line, length); // Convert key to lowercase for uniformity
+            } else {
+                String content = new String(line, 0, length, Charset.defaultCharset());
+                chunk.add(key, new MultimediaItem(content, determineType(content)));
+                key = null;
+            }
+            pos = next;
+        }
+        return chunk;
+    }
+
+    // True if any of the eight bytes in word is a newline (the usual "has zero byte" trick)
+    private static boolean hasNewline(long word) {
+        long x = word ^ 0x0A0A0A0A0A0A0A0AL; // Newline bytes become zero
+        return ((x - 0x0101010101010101L) & ~x & 0x8080808080808080L) != 0;
+    }
+
+    // Decode a key to a lowercase String, making only one copy when the bytes are plain ASCII
+    private static String decodeLowerCase(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, 0, length, Charset.defaultCharset()).toLowerCase(); // Non-ASCII key
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] >= 'A' && bytes[i] <= 'Z') bytes[i] += 'a' - 'A';
+        }
+        return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    // True if s ends with suffix, ignoring case
+    private static boolean endsWithIgnoreCase(String s, String suffix) {
+        return s.regionMatches(true, s.length() - suffix.length(), suffix, 0, suffix.length());
+    }
+
+    // Keys and items parsed from one chunk, in file order
+    private static class ParsedChunk {
+        String[] keys = new String[CHUNK_RECORDS];
+        MultimediaItem[] items = new MultimediaItem[CHUNK_RECORDS];
+        int records = 0;
+
+        // Chunks never hold more than CHUNK_RECORDS complete records
+        void add(String key, MultimediaItem item) {
+            keys[records] = key;
+            items[records] = item;
+            records++;
+        }
+    }
+}
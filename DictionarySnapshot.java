@@ -0,0 +1,179 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/*
+ * Binary snapshot of a populated dictionary, for restarting without re-parsing text.
+ *
+ * Layout (big-endian, as written by DataOutputStream):
+ *   header: int magic "MDIC", int version, int number of keys,
+ *           long mutation-log generation folded into the snapshot (version 2 and up),
+ *           long CRC32 of the key count, the generation and everything after the
+ *           header (version 2 covers only what follows the header),
+ *   then for each key in increasing order:
+ *     string key, int number of items, then per item: int type (a byte before
+ *     version 4), string content.
+ * A string is an int byte length followed by that many UTF-8 bytes.
+ *
+ * Keys are stored in order, so loading is a single pass into buildFromSorted.
+ * Version 1 files (no generation field) are still readable and report generation 0.
+ *
+ * save makes the snapshot durable before returning: the file is fsynced before it
+ * is renamed into place, and its directory after, so a caller may then discard
+ * whatever the snapshot replaces (such as a mutation log).
+ */
+public class DictionarySnapshot {
+
+    private static final int MAGIC = 0x4D444943; // "MDIC"
+    private static final int VERSION = 4;
+    private static final int CHECKSUM_OFFSET = 20; // After magic, version, key count and generation
+    private static final int PAGE_KEYS = 4096;     // Keys fetched from the dictionary at a time while saving
+
+    // Returns true if file starts with the snapshot magic number
+    public static boolean isSnapshot(String file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false; // Missing, unreadable or shorter than the magic number
+        }
+    }
+
+    // Write every key of dict to file, as a snapshot that is not tied to a mutation log
+    public static void save(OrderedDictionary dict, String file) throws IOException {
+        save(dict, file, 0);
+    }
+
+    // Write every key of dict to file, recording that it includes every mutation of
+    // log generation `generation`. The snapshot is written beside the target and
+    // renamed into place, so an existing file is never left half-written.
+    public static void save(OrderedDictionary dict, String file, long generation) throws IOException {
+        File tmp = new File(file + ".tmp");
+        CRC32 crc = new CRC32();
+        int keys = dict.size();
+        checkHeader(crc, keys, generation);
+
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream header = new DataOutputStream(fos);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(keys);
+            header.writeLong(generation);
+            header.writeLong(0); // Checksum, filled in once the body is written
+
+            // Buffer above the checksum so the CRC is updated a block at a time
+            DataOutputStream body = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fos, crc), 1 << 16));
+            // Walk the keys a page at a time; each page restarts at the last key of the previous one
+            ArrayList<Data> page = dict.ascendingFrom("", PAGE_KEYS); // "" sorts before every key
+            int first = 0;
+            while (first < page.size()) {
+                for (int i = first; i < page.size(); i++) {
+                    Data data = page.get(i);
+                    writeString(body, data.getName());
+                    body.writeInt(data.getMedia().size());
+                    for (MultimediaItem item : data.getMedia()) {
+                        body.writeInt(item.getType());
+                        writeString(body, item.getContent());
+                    }
+                }
+                if (page.size() < PAGE_KEYS) break;
+                page = dict.ascendingFrom(page.get(page.size() - 1).getName(), PAGE_KEYS);
+                first = 1; // Already written
+            }
+            body.flush();
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.seek(CHECKSUM_OFFSET);
+            raf.writeLong(crc.getValue());
+            raf.getFD().sync(); // Every byte on disk before the rename can expose it
+        }
+        Path target = Paths.get(file).toAbsolutePath();
+        Files.move(tmp.toPath(), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target.getParent());
+    }
+
+    // Replace the contents of dict with the snapshot in file; returns the log generation it includes
+    public static long load(String file, OrderedDictionary dict) throws IOException {
+        CRC32 crc = new CRC32();
+
+        try (FileInputStream fis = new FileInputStream(file)) {
+            long fileSize = fis.getChannel().size(); // No length field can legitimately exceed this
+            DataInputStream header = new DataInputStream(fis);
+            if (header.readInt() != MAGIC) throw new IOException(file + " is not a dictionary snapshot");
+            int version = header.readInt();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported snapshot version " + version);
+            int keys = header.readInt();
+            long generation = (version >= 2) ? header.readLong() : 0;
+            long checksum = header.readLong();
+            if (keys < 0 || keys > fileSize) throw new IOException("Corrupt key count in snapshot " + file);
+            if (version >= 3) checkHeader(crc, keys, generation);
+
+            DataInputStream body = new DataInputStream(new BufferedInputStream(new CheckedInputStream(fis, crc), 1 << 16));
+            ArrayList<Data> sorted = new ArrayList<Data>(keys);
+            for (int i = 0; i < keys; i++) {
+                Data data = new Data(readString(body, fileSize));
+                if (i > 0 && sorted.get(i - 1).getName().compareTo(data.getName()) >= 0) {
+                    throw new IOException("Keys out of order in snapshot " + file);
+                }
+                int items = body.readInt();
+                for (int j = 0; j < items; j++) {
+                    int type = (version >= 4) ? body.readInt() : body.readByte();
+                    data.add(new MultimediaItem(readString(body, fileSize), type));
+                }
+                sorted.add(data);
+            }
+
+            if (body.read() != -1) throw new IOException("Trailing bytes in snapshot " + file);
+            if (crc.getValue() != checksum) throw new IOException("Checksum mismatch in snapshot " + file);
+            dict.buildFromSorted(sorted);
+            return generation;
+        } catch (EOFException e) {
+            throw new IOException("Snapshot " + file + " is truncated");
+        }
+    }
+
+    // Start the checksum with the header fields it covers
+    private static void checkHeader(CRC32 crc, int keys, long generation) {
+        crc.update(ByteBuffer.allocate(12).putInt(keys).putLong(generation).array());
+    }
+
+    // Make a rename in dir durable; platforms that cannot open a directory do not need it
+    private static void syncDirectory(Path dir) throws IOException {
+        if (dir == null) return;
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return; // Windows: directories cannot be opened, and renames are durable with the file
+        }
+        try (FileChannel c = channel) {
+            c.force(true);
+        }
+    }
+
+    // Write a length-prefixed UTF-8 string (no 64K limit, unlike writeUTF)
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Read a string written by writeString
+    private static String readString(DataInputStream in, long maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) throw new IOException("Corrupt string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
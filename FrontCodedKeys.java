@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Immutable sorted set of distinct keys, front-coded in blocks. Keys are cut into
+ * blocks of BLOCK keys; the first key of a block is stored whole and every other
+ * key as (length of the prefix it shares with the key before it, the rest of its
+ * chars). Sorted word lists share long prefixes, so most keys cost a few bytes.
+ *
+ * Everything is in one byte array: one byte per char when every key is Latin-1,
+ * two otherwise, and lengths as 7-bit varints. A key is identified by its rank
+ * (0 .. size()-1). indexOf binary-searches the block heads in place and then
+ * decodes at most one block, so a lookup allocates only a small char buffer.
+ */
+public class FrontCodedKeys {
+
+    private static final int BLOCK = 16; // Keys per block
+
+    private final byte[] pool;       // The encoded blocks
+    private final int[] blockStart;  // Offset of each block in pool
+    private final int count;         // Number of keys
+    private final int maxLength;     // Length of the longest key
+    private final boolean wide;      // Two bytes per char
+
+    private FrontCodedKeys(byte[] pool, int[] blockStart, int count, int maxLength, boolean wide) {
+        this.pool = pool;
+        this.blockStart = blockStart;
+        this.count = count;
+        this.maxLength = maxLength;
+        this.wide = wide;
+    }
+
+    // Encode keys, which must be in strictly increasing order
+    public static FrontCodedKeys of(ArrayList<String> sorted) {
+        boolean wide = false;
+        int maxLength = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            String key = sorted.get(i);
+            if (i > 0 && sorted.get(i - 1).compareTo(key) >= 0) {
+                throw new IllegalArgumentException("Keys out of order at " + i + ": " + key);
+            }
+            maxLength = Math.max(maxLength, key.length());
+            for (int j = 0; j < key.length() && !wide; j++) wide = key.charAt(j) > 0xFF;
+        }
+
+        Encoder out = new Encoder(wide);
+        int[] blockStart = new int[(sorted.size() + BLOCK - 1) / BLOCK];
+        for (int i = 0; i < sorted.size(); i++) {
+            String key = sorted.get(i);
+            if (i % BLOCK == 0) {
+                blockStart[i / BLOCK] = out.size;
+                out.varint(key.length());
+                out.chars(key, 0);
+            } else {
+                String prev = sorted.get(i - 1);
+                int lcp = 0;
+                while (lcp < key.length() && lcp < prev.length() && key.charAt(lcp) == prev.charAt(lcp)) lcp++;
+                out.varint(lcp);
+                out.varint(key.length() - lcp);
+                out.chars(key, lcp);
+            }
+        }
+        return new FrontCodedKeys(Arrays.copyOf(out.bytes, out.size), blockStart, sorted.size(), maxLength, wide);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Approximate heap footprint in bytes
+    public long bytes() {
+        return 16 + pool.length + 16 + 4L * blockStart.length + 32;
+    }
+
+    // Key of the given rank
+    public String key(int rank) {
+        if (rank < 0 || rank >= count) throw new IndexOutOfBoundsException("Rank " + rank + " of " + count);
+        Decoder in = new Decoder(rank / BLOCK);
+        for (int i = rank % BLOCK; i > 0; i--) in.next();
+        return new String(in.key, 0, in.length);
+    }
+
+    // Rank of key if present, otherwise (-(rank it would have) - 1), as Arrays.binarySearch
+    public int indexOf(String key) {
+        // Last block whose first key is <= key
+        int lo = 0;
+        int hi = blockStart.length - 1;
+        int block = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareHead(key, mid);
+            if (cmp == 0) return mid * BLOCK;
+            if (cmp > 0) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (block < 0) return -1; // Before every key
+
+        // Walk the block; its first key is already known to be smaller
+        Decoder in = new Decoder(block);
+        int rank = block * BLOCK;
+        int end = Math.min(rank + BLOCK, count);
+        for (rank++; rank < end; rank++) {
+            in.next();
+            int cmp = compare(key, in.key, in.length);
+            if (cmp == 0) return rank;
+            if (cmp < 0) break;
+        }
+        return -rank - 1;
+    }
+
+    // Rank of the first key >= key (size() if none)
+    public int ceiling(String key) {
+        int i = indexOf(key);
+        return (i >= 0) ? i : -i - 1;
+    }
+
+    // Rank of the last key <= key (-1 if none)
+    public int floor(String key) {
+        int i = indexOf(key);
+        return (i >= 0) ? i : -i - 2;
+    }
+
+    // key.compareTo(first key of block), without decoding it
+    private int compareHead(String key, int block) {
+        int pos = blockStart[block];
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = pool[pos++];
+            length |= (b & 0x7F) << shift;
+            if (b >= 0) break;
+        }
+        int common = Math.min(key.length(), length);
+        for (int i = 0; i < common; i++) {
+            char stored = charAt(pos, i);
+            char c = key.charAt(i);
+            if (c != stored) return c - stored;
+        }
+        return key.length() - length;
+    }
+
+    private static int compare(String key, char[] chars, int length) {
+        int common = Math.min(key.length(), length);
+        for (int i = 0; i < common; i++) {
+            char c = key.charAt(i);
+            if (c != chars[i]) return c - chars[i];
+        }
+        return key.length() - length;
+    }
+
+    // i-th char of the run starting at pos
+    private char charAt(int pos, int i) {
+        if (!wide) return (char) (pool[pos + i] & 0xFF);
+        pos += 2 * i;
+        return (char) (((pool[pos] & 0xFF) << 8) | (pool[pos + 1] & 0xFF));
+    }
+
+    // Decodes the keys of one block in order into a reused buffer
+    private class Decoder {
+        final char[] key = new char[maxLength];
+        int length;   // Chars of key in use
+        int pos;      // Offset of the next encoded key
+
+        Decoder(int block) {
+            pos = blockStart[block];
+            length = varint();
+            readChars(0, length);
+        }
+
+        void next() {
+            int lcp = varint();
+            int suffix = varint();
+            readChars(lcp, suffix);
+            length = lcp + suffix;
+        }
+
+        private void readChars(int from, int n) {
+            for (int i = 0; i < n; i++) key[from + i] = charAt(pos, i);
+            pos += wide ? 2 * n : n;
+        }
+
+        private int varint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = pool[pos++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) return value;
+            }
+        }
+    }
+
+    // Growable byte buffer used while encoding
+    private static class Encoder {
+        final boolean wide;
+        byte[] bytes = new byte[64];
+        int size;
+
+        Encoder(boolean wide) {
+            this.wide = wide;
+        }
+
+        void varint(int value) {
+            while (value >= 0x80) {
+                put((byte) (value | 0x80));
+                value >>>= 7;
+            }
+            put((byte) value);
+        }
+
+        void chars(String s, int from) {
+            for (int i = from; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (wide) put((byte) (c >>> 8));
+                put((byte) c);
+            }
+        }
+
+        private void put(byte b) {
+            if (size == bytes.length) bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = b;
+        }
+    }
+}
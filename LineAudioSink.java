@@ -0,0 +1,37 @@
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/*
+ * AudioSink on the default mixer's SourceDataLine. The line's own buffer, opened at
+ * a fixed size, is the ring the streamed PCM goes through.
+ */
+public class LineAudioSink implements AudioSink {
+
+    private SourceDataLine line;
+
+    public void open(AudioFormat format, int bufferBytes) throws LineUnavailableException {
+        line = AudioSystem.getSourceDataLine(format);
+        line.open(format, bufferBytes);
+        line.start();
+    }
+
+    public int write(byte[] b, int off, int len) {
+        return line.write(b, off, len);
+    }
+
+    public void drain() {
+        line.drain();
+    }
+
+    public void flush() {
+        line.stop();
+        line.flush();
+    }
+
+    public void close() {
+        if (line != null) line.close();
+        line = null;
+    }
+}
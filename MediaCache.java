@@ -0,0 +1,158 @@
+import java.awt.MediaTracker;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.swing.ImageIcon;
+
+/*
+ * Size-bounded LRU cache of decoded media, shared by SoundPlayer and PictureViewer
+ * so a popular file is read and decoded once instead of on every 'get'.
+ *
+ * Entries are weighed in bytes: a sound by its decoded PCM data, an image by its
+ * decoded pixels (width * height * 4). Least recently used entries are evicted
+ * until the total fits within maxBytes; a single file larger than that is decoded
+ * but not kept. Images that fail to load are not cached either, so a file fixed
+ * on disk is picked up on the next show.
+ *
+ * Files are decoded outside the lock, so two threads asking for the same file at
+ * once may both decode it; the second result simply replaces the first.
+ */
+public class MediaCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long bytes;          // Total weight of entries
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public MediaCache(long maxBytes) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        this.maxBytes = maxBytes;
+    }
+
+    // Decoded PCM samples of a sound file, ready for Clip.open(format, data, 0, data.length)
+    public static class DecodedAudio {
+        private final AudioFormat format;
+        private final byte[] data;
+
+        DecodedAudio(AudioFormat format, byte[] data) {
+            this.format = format;
+            this.data = data;
+        }
+
+        public AudioFormat getFormat() {
+            return format;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    // The decoded sound in fileName, from the cache if possible
+    public DecodedAudio sound(String fileName) throws MultimediaException {
+        Object cached = lookup(fileName);
+        if (cached instanceof DecodedAudio) return (DecodedAudio) cached;
+
+        DecodedAudio audio;
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(new File(fileName).getAbsoluteFile())) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            audio = new DecodedAudio(in.getFormat(), out.toByteArray());
+        } catch (Exception e) {
+            throw new MultimediaException("Error processing input file " + fileName);
+        }
+        store(fileName, audio, audio.getData().length);
+        return audio;
+    }
+
+    // The image in fileName, from the cache if possible
+    public ImageIcon image(String fileName) {
+        Object cached = lookup(fileName);
+        if (cached instanceof ImageIcon) return (ImageIcon) cached;
+
+        // Blocks until the image is decoded; animated GIFs may report ABORTED once their first frame is in
+        ImageIcon icon = new ImageIcon(fileName);
+        if (icon.getImageLoadStatus() != MediaTracker.ERRORED && icon.getIconWidth() > 0) {
+            store(fileName, icon, 4L * icon.getIconWidth() * icon.getIconHeight());
+        }
+        return icon;
+    }
+
+    // Decode fileName now, so its first use is a hit; type is 2 for sound, 3 for image
+    public void preload(String fileName, int type) throws MultimediaException {
+        if (type == 2) sound(fileName);
+        else if (type == 3) image(fileName);
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    // Bytes currently held
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // One-line summary of the counters
+    public synchronized String stats() {
+        long lookups = hits + misses;
+        double hitRate = (lookups == 0) ? 0 : 100.0 * hits / lookups;
+        return String.format("Media cache: %d files, %.1f/%.1f MB, %d hits, %d misses (%.1f%% hits), %d evictions",
+                entries.size(), bytes / 1048576.0, maxBytes / 1048576.0, hits, misses, hitRate, evictions);
+    }
+
+    private synchronized Object lookup(String fileName) {
+        Entry e = entries.get(fileName);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.media;
+    }
+
+    private synchronized void store(String fileName, Object media, long weight) {
+        if (weight > maxBytes) return; // Would evict everything else and still not fit
+        Entry old = entries.put(fileName, new Entry(media, weight));
+        if (old != null) bytes -= old.weight;
+        bytes += weight;
+
+        Iterator<Entry> it = entries.values().iterator(); // Least recently used first
+        while (bytes > maxBytes) {
+            Entry eldest = it.next();
+            it.remove();
+            bytes -= eldest.weight;
+            evictions++;
+        }
+    }
+
+    private static class Entry {
+        final Object media;  // DecodedAudio or ImageIcon
+        final long weight;   // Bytes charged for it
+
+        Entry(Object media, long weight) {
+            this.media = media;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * What a headless probe of a media file found: whether it can be played or shown,
+ * its size on disk, and its dimensions (images) or duration (sounds). Fields that
+ * do not apply to the file's type, or could not be read, are -1.
+ */
+public class MediaInfo {
+
+    private final boolean valid;
+    private final String problem;      // Why the file is not valid, or null
+    private final long fileSize;       // Bytes on disk
+    private final int width;           // Pixels, for images
+    private final int height;
+    private final long durationMillis; // For sounds
+
+    // A file that probed cleanly
+    public MediaInfo(long fileSize, int width, int height, long durationMillis) {
+        this.valid = true;
+        this.problem = null;
+        this.fileSize = fileSize;
+        this.width = width;
+        this.height = height;
+        this.durationMillis = durationMillis;
+    }
+
+    // A file that is missing or cannot be decoded
+    public MediaInfo(String problem, long fileSize) {
+        this.valid = false;
+        this.problem = problem;
+        this.fileSize = fileSize;
+        this.width = -1;
+        this.height = -1;
+        this.durationMillis = -1;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public String getProblem() {
+        return problem;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    // For example "1.2 MB, 640x480" or "missing file"
+    public String toString() {
+        if (!valid) return problem;
+        StringBuilder sb = new StringBuilder(String.format("%.1f KB", fileSize / 1024.0));
+        if (width >= 0) sb.append(", ").append(width).append('x').append(height);
+        if (durationMillis >= 0) sb.append(String.format(", %.1f s", durationMillis / 1000.0));
+        return sb.toString();
+    }
+}
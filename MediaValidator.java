@@ -0,0 +1,163 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.sound.midi.MidiSystem;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+
+/*
+ * Checks the sound, image and HTML files a dictionary refers to without playing
+ * or showing anything, so that broken entries are found at load time instead of
+ * on 'get'. Each distinct file is probed once, on a pool of worker threads: a
+ * sound by reading its header (frame count and rate, or a MIDI sequence's
+ * length), an image by reading its dimensions through ImageIO without decoding
+ * the pixels, an HTML page by checking it can be read. The results are attached
+ * to every item that names the file (MultimediaItem.setInfo) and kept in the
+ * Report, by file name.
+ *
+ * Backends that hand out copies of their items (OffHeapOrderedDictionary) do not
+ * keep what setInfo recorded; look those up in the Report instead.
+ */
+public class MediaValidator {
+
+    private int workers; // Files probed at once
+
+    public MediaValidator(int newWorkers) {
+        if (newWorkers < 1) newWorkers = 1;
+        this.workers = newWorkers;
+    }
+
+    // Probe every sound, image and HTML item of dict and record the results on the items
+    public Report validate(OrderedDictionary dict) throws InterruptedException {
+        // Items grouped by the file they name, in key order
+        LinkedHashMap<String, ArrayList<MultimediaItem>> byFile = new LinkedHashMap<String, ArrayList<MultimediaItem>>();
+        LinkedHashMap<String, ArrayList<String>> keysByFile = new LinkedHashMap<String, ArrayList<String>>();
+        for (Data data : dict.ascendingFrom("", dict.size())) {
+            for (MultimediaItem item : data.getMedia()) {
+                if (item.getType() < 2 || item.getType() > 4) continue;
+                byFile.computeIfAbsent(item.getContent(), f -> new ArrayList<MultimediaItem>(1)).add(item);
+                keysByFile.computeIfAbsent(item.getContent(), f -> new ArrayList<String>(1)).add(data.getName());
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        LinkedHashMap<String, Future<MediaInfo>> probes = new LinkedHashMap<String, Future<MediaInfo>>();
+        try {
+            for (Map.Entry<String, ArrayList<MultimediaItem>> e : byFile.entrySet()) {
+                String file = e.getKey();
+                int type = e.getValue().get(0).getType();
+                probes.put(file, pool.submit(() -> probe(file, type)));
+            }
+
+            Report report = new Report();
+            for (Map.Entry<String, Future<MediaInfo>> e : probes.entrySet()) {
+                MediaInfo info;
+                try {
+                    info = e.getValue().get();
+                } catch (ExecutionException ex) {
+                    info = new MediaInfo("cannot probe: " + ex.getCause(), -1);
+                }
+                for (MultimediaItem item : byFile.get(e.getKey())) item.setInfo(info);
+                report.add(e.getKey(), info, keysByFile.get(e.getKey()));
+            }
+            return report;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Look at fileName as type 2 (sound), 3 (image) or 4 (HTML) would be played or shown
+    public static MediaInfo probe(String fileName, int type) {
+        File file = new File(fileName).getAbsoluteFile();
+        if (!file.isFile()) return new MediaInfo("missing file", -1);
+        long size = file.length();
+        if (!file.canRead()) return new MediaInfo("unreadable file", size);
+
+        try {
+            switch (type) {
+                case 2:
+                    if (fileName.toLowerCase().endsWith(".mid")) {
+                        return new MediaInfo(size, -1, -1, MidiSystem.getSequence(file).getMicrosecondLength() / 1000);
+                    }
+                    AudioFileFormat format = AudioSystem.getAudioFileFormat(file);
+                    long frames = format.getFrameLength();
+                    float rate = format.getFormat().getFrameRate();
+                    long millis = (frames > 0 && rate > 0) ? (long) (frames * 1000 / rate) : -1;
+                    return new MediaInfo(size, -1, -1, millis);
+                case 3:
+                    try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+                        Iterator<ImageReader> readers = (in == null) ? null : ImageIO.getImageReaders(in);
+                        if (readers == null || !readers.hasNext()) return new MediaInfo("not an image", size);
+                        ImageReader reader = readers.next();
+                        try {
+                            reader.setInput(in, true, true);
+                            return new MediaInfo(size, reader.getWidth(0), reader.getHeight(0), -1);
+                        } finally {
+                            reader.dispose();
+                        }
+                    }
+                default:
+                    return new MediaInfo(size, -1, -1, -1); // HTML: ShowHTML only needs to read it
+            }
+        } catch (Exception e) {
+            String message = (e.getMessage() != null) ? e.getMessage() : e.toString();
+            return new MediaInfo("cannot decode: " + message, size);
+        }
+    }
+
+    // Outcome of one validate run
+    public static class Report {
+        private final LinkedHashMap<String, MediaInfo> files = new LinkedHashMap<String, MediaInfo>();
+        private final LinkedHashMap<String, ArrayList<String>> keys = new LinkedHashMap<String, ArrayList<String>>();
+        private int items;
+        private int broken;
+
+        void add(String file, MediaInfo info, ArrayList<String> fileKeys) {
+            files.put(file, info);
+            keys.put(file, fileKeys);
+            items += fileKeys.size();
+            if (!info.isValid()) broken++;
+        }
+
+        // What probing fileName found, or null if no item names it
+        public MediaInfo info(String fileName) {
+            return files.get(fileName);
+        }
+
+        // Distinct files probed
+        public int files() {
+            return files.size();
+        }
+
+        // Items naming those files
+        public int items() {
+            return items;
+        }
+
+        // Files that are missing or cannot be decoded
+        public int broken() {
+            return broken;
+        }
+
+        // One line per broken file with the keys that name it, after a summary line
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Probed ").append(files.size()).append(" media files named by ").append(items)
+                    .append(" items: ").append(broken).append(" broken");
+            for (Map.Entry<String, MediaInfo> e : files.entrySet()) {
+                if (e.getValue().isValid()) continue;
+                sb.append("\n  ").append(e.getKey()).append(": ").append(e.getValue().getProblem())
+                        .append(" (").append(String.join(", ", keys.get(e.getKey()))).append(')');
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -2,6 +2,7 @@ public class MultimediaItem {
     
     private String content; // The content of the multimedia item (e.g., text, filename, URL)
     private int type;       // The type of multimedia: 1=text, 2=sound, 3=image, 4=HTML
+    private MediaInfo info; // What MediaValidator found in the file, or null if it was not probed
 
     // Constructor: initializes a multimedia item with its content and type
     public MultimediaItem(String newContent, int newType) {
@@ -18,4 +19,19 @@ public class MultimediaItem {
     public int getType() {
         return type;
     }
+
+    // Returns the result of probing the file, or null if it was not probed
+    public MediaInfo getInfo() {
+        return info;
+    }
+
+    // Records the result of probing the file
+    public void setInfo(MediaInfo newInfo) {
+        this.info = newInfo;
+    }
+
+    // False only if the file was probed and found missing or unreadable
+    public boolean isPlayable() {
+        return info == null || info.isValid();
+    }
 }
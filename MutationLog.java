@@ -0,0 +1,321 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/*
+ * Append-only write-ahead log of dictionary mutations (add, remove, delete).
+ *
+ * logAdd, logRemove and logDelete encode the record into an in-memory batch and
+ * return its sequence number; sync(seq) then waits until that record is on disk.
+ * A committer thread writes whatever has been batched with one write and one
+ * fsync, so callers that log at the same time share an fsync, and records
+ * appended while an fsync is in progress go out together in the next one (group
+ * commit). A mutation must not be applied or acknowledged before sync(seq).
+ *
+ * Layout: header of int magic "MLOG", int version, long generation, then records of
+ *   int payload length, int CRC32 of payload, payload:
+ *   byte op, string key, and for ADD string content + int type, for DELETE int type.
+ * A string is an int byte length followed by UTF-8 bytes. Replay stops at the first
+ * torn or corrupt record and cuts the file back to the last good one.
+ *
+ * The generation ties the log to snapshots: a snapshot saved with generation g
+ * already contains every record of logs with generation <= g.
+ */
+public class MutationLog {
+
+    private static final byte ADD = 1;    // put(key, content, type)
+    private static final byte REMOVE = 2; // remove(key)
+    private static final byte DELETE = 3; // remove(key, type)
+
+    private static final int MAGIC = 0x4D4C4F47; // "MLOG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private String path;           // Log file name
+    private FileChannel channel;   // Log file, positioned at its end
+    private long generation;       // Generation written in the header
+    private long records;          // Records in the log, replayed plus appended
+
+    private final Object lock = new Object();      // Guards the batch and the counters
+    private final Object writeLock = new Object(); // Held while the channel is written or truncated
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(); // Batch not yet written
+    private long appendedSeq = 0;  // Number of records appended so far
+    private long durableSeq = 0;   // Number of records known to be on disk
+    private IOException failure;   // First write error, reported to every later caller
+    private boolean closed = false;
+    private Thread committer;
+
+    // Open file, creating it with the given generation if it does not exist or is empty
+    public MutationLog(String file, long newGeneration) throws IOException {
+        path = file;
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_BYTES) {
+            writeHeader(newGeneration);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) throw new IOException(file + " is not a mutation log");
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unsupported log version " + version);
+            generation = header.getLong();
+        }
+        channel.position(channel.size());
+
+        committer = new Thread(this::commitLoop, "mutation-log-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    // Returns the generation in the log header
+    public long getGeneration() {
+        return generation;
+    }
+
+    // Returns the number of records in the log
+    public long getRecordCount() {
+        synchronized (lock) {
+            return records;
+        }
+    }
+
+    // Apply every intact record to dict, in order, and cut off any torn tail.
+    // Returns the number of records applied.
+    public long replay(OrderedDictionary dict) throws IOException {
+        long applied = 0;
+        long goodEnd = HEADER_BYTES;
+        CRC32 crc = new CRC32();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16))) {
+            in.skipNBytes(HEADER_BYTES);
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break; // Clean end of log
+                }
+                if (length <= 0 || length > channel.size() - goodEnd - 8) break; // Torn length field
+                int expected = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != expected) break; // Torn or corrupt record
+
+                apply(dict, payload);
+                applied++;
+                goodEnd += 8 + length;
+            }
+        } catch (EOFException e) {
+            // Record cut short by a crash; goodEnd marks the last complete one
+        }
+
+        synchronized (writeLock) {
+            if (channel.size() > goodEnd) {
+                channel.truncate(goodEnd);
+                channel.force(false);
+            }
+            channel.position(goodEnd);
+        }
+        synchronized (lock) {
+            records = applied;
+        }
+        return applied;
+    }
+
+    // Log put(key, content, type); returns the record's sequence number for sync(seq)
+    public long logAdd(String key, String content, int type) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ADD);
+        writeString(out, key);
+        writeString(out, content);
+        out.writeInt(type);
+        return append(bytes.toByteArray());
+    }
+
+    // Log remove(key); returns the record's sequence number for sync(seq)
+    public long logRemove(String key) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(REMOVE);
+        writeString(out, key);
+        return append(bytes.toByteArray());
+    }
+
+    // Log remove(key, type); returns the record's sequence number for sync(seq)
+    public long logDelete(String key, int type) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(DELETE);
+        writeString(out, key);
+        out.writeInt(type);
+        return append(bytes.toByteArray());
+    }
+
+    // Wait until every record appended so far is on disk
+    public void sync() throws IOException {
+        long target;
+        synchronized (lock) {
+            target = appendedSeq;
+        }
+        sync(target);
+    }
+
+    // Wait until the record with sequence number seq, and every earlier one, is on disk
+    public void sync(long seq) throws IOException {
+        synchronized (lock) {
+            while (durableSeq < seq && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while syncing the mutation log");
+                }
+            }
+            if (failure != null) throw failure;
+        }
+    }
+
+    // Empty the log and start generation newGeneration. Call this only after a
+    // snapshot containing every logged record has been saved, and not concurrently
+    // with appends.
+    public void reset(long newGeneration) throws IOException {
+        sync();
+        synchronized (writeLock) {
+            channel.truncate(0);
+            writeHeader(newGeneration);
+            channel.position(HEADER_BYTES);
+        }
+        synchronized (lock) {
+            records = 0;
+        }
+    }
+
+    // Flush everything, stop the committer and close the file
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+            }
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+    }
+
+    // Add one framed record to the pending batch and wake the committer; returns its sequence number
+    private long append(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        synchronized (lock) {
+            if (failure != null) throw failure;
+            if (closed) throw new IOException("Mutation log is closed");
+            DataOutputStream out = new DataOutputStream(pending);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+            appendedSeq++;
+            records++;
+            lock.notifyAll();
+            return appendedSeq;
+        }
+    }
+
+    // Committer thread: write and fsync each batch, one at a time
+    private void commitLoop() {
+        while (true) {
+            byte[] batch;
+            long batchSeq;
+            synchronized (lock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0) return; // Closed and drained
+                batch = pending.toByteArray();
+                pending.reset();
+                batchSeq = appendedSeq;
+            }
+
+            // Appends made during the write and fsync collect in pending and go out in the next batch
+            IOException error = null;
+            try {
+                synchronized (writeLock) {
+                    ByteBuffer buf = ByteBuffer.wrap(batch);
+                    while (buf.hasRemaining()) channel.write(buf);
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+
+            synchronized (lock) {
+                if (error != null && failure == null) failure = error;
+                if (error == null) durableSeq = batchSeq;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Apply one record payload to dict
+    private static void apply(OrderedDictionary dict, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        String key = readString(in);
+        try {
+            if (op == ADD) {
+                String content = readString(in);
+                dict.put(key, content, in.readInt());
+            } else if (op == REMOVE) {
+                dict.remove(key);
+            } else if (op == DELETE) {
+                dict.remove(key, in.readInt());
+            } else {
+                throw new IOException("Unknown log record type " + op);
+            }
+        } catch (DictionaryException e) {
+            // Query checks a key exists before logging its removal, so this cannot happen on a consistent base
+        }
+    }
+
+    // Write a fresh header and make it durable
+    private void writeHeader(long newGeneration) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putLong(newGeneration).flip();
+        while (header.hasRemaining()) channel.write(header, HEADER_BYTES - header.remaining());
+        channel.force(false);
+        generation = newGeneration;
+    }
+
+    // Write a length-prefixed UTF-8 string
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Read a string written by writeString
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) throw new IOException("Corrupt string length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
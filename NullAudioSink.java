@@ -0,0 +1,59 @@
+import javax.sound.sampled.AudioFormat;
+
+/*
+ * AudioSink that plays nothing: it takes every byte at once and remembers how many
+ * it got and when the first arrived. For tests and benchmarks without a sound device.
+ */
+public class NullAudioSink implements AudioSink {
+
+    private AudioFormat format;
+    private int bufferBytes;
+    private long bytes;            // Bytes written since open
+    private long firstWriteNanos;  // System.nanoTime of the first write, or 0
+    private boolean open;
+
+    public void open(AudioFormat newFormat, int newBufferBytes) {
+        format = newFormat;
+        bufferBytes = newBufferBytes;
+        bytes = 0;
+        firstWriteNanos = 0;
+        open = true;
+    }
+
+    public int write(byte[] b, int off, int len) {
+        if (!open) return 0;
+        if (firstWriteNanos == 0) firstWriteNanos = System.nanoTime();
+        bytes += len;
+        return len;
+    }
+
+    public void drain() {
+    }
+
+    public void flush() {
+    }
+
+    public void close() {
+        open = false;
+    }
+
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    public int getBufferBytes() {
+        return bufferBytes;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getFirstWriteNanos() {
+        return firstWriteNanos;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+}
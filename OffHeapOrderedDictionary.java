@@ -0,0 +1,300 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * ArrayOrderedDictionary whose keys and media live outside the Java heap. Every
+ * key and every media list is a record in direct ByteBuffers, and the tree holds
+ * only two long offsets per handle, so the GC sees a handful of primitive arrays
+ * however many keys are loaded.
+ *
+ * Records:
+ *   string: int header (length in chars, top bit set when stored one byte per
+ *           char because every char is below 256), then the chars;
+ *   item:   long offset of the key's next item record (-1 for none), int type,
+ *           string content.
+ * A key's media list is a chain of item records; the dictionary remembers its
+ * first and last, so adding media appends one record and links it in. Records
+ * are never moved. Deleting media rewrites the key's chain and abandons the old
+ * one, and removing a key abandons all of its records; garbageBytes() reports how
+ * much is abandoned. Once that passes half of the reserved memory (and at least
+ * one chunk), the live records are copied, in key order, chunk to chunk into fresh
+ * direct buffers and the old ones dropped. Compaction decodes nothing: the tree
+ * and its offset arrays are the only heap it touches.
+ *
+ * Lists returned by get and Data returned by the neighbour queries are decoded
+ * copies: changing them does not change the dictionary.
+ */
+public class OffHeapOrderedDictionary extends ArrayOrderedDictionary {
+
+    private static final int CHUNK_SHIFT = 26;                // 64 MB direct buffers
+    private static final int CHUNK_BYTES = 1 << CHUNK_SHIFT;
+    private static final int LATIN1 = 0x80000000;             // Header flag: one byte per char
+    private static final long NONE = -1;                      // Offset of no record
+    private static final int ITEM_HEADER = 12;                // Next offset and type
+
+    // Set by resetStorage, which the superclass constructor calls, so no initializers here
+    private long[] keyOffset;               // Key record of each handle
+    private long[] mediaOffset;             // First item record of each handle, or NONE
+    private long[] mediaTail;               // Last item record of each handle, or NONE
+    private ArrayList<ByteBuffer> chunks;   // Off-heap memory, CHUNK_BYTES each
+    private long top;                       // Offset of the next free byte
+    private long garbage;                   // Bytes in abandoned records and unused chunk tails
+
+    public OffHeapOrderedDictionary() {
+        super();
+    }
+
+    // Bytes of direct memory reserved
+    public long reservedBytes() {
+        return (long) chunks.size() * CHUNK_BYTES;
+    }
+
+    // Bytes of reserved memory that hold no live record
+    public long garbageBytes() {
+        return garbage;
+    }
+
+    public void put(String key, String content, int type) {
+        super.put(key, content, type);
+        compactIfNeeded();
+    }
+
+    public void remove(String key) throws DictionaryException {
+        super.remove(key);
+        compactIfNeeded();
+    }
+
+    public void remove(String key, int type) throws DictionaryException {
+        super.remove(key, type);
+        compactIfNeeded();
+    }
+
+    /* Storage hooks */
+
+    protected void resetStorage(int capacity) {
+        keyOffset = new long[capacity];
+        mediaOffset = new long[capacity];
+        mediaTail = new long[capacity];
+        chunks = new ArrayList<ByteBuffer>(); // Old buffers are freed once unreachable
+        top = 0;
+        garbage = 0;
+    }
+
+    protected void growStorage(int capacity, int used) {
+        keyOffset = Arrays.copyOf(keyOffset, capacity);
+        mediaOffset = Arrays.copyOf(mediaOffset, capacity);
+        mediaTail = Arrays.copyOf(mediaTail, capacity);
+    }
+
+    protected void store(int node, String key, ArrayList<MultimediaItem> items) {
+        keyOffset[node] = writeString(key);
+        writeMedia(node, items);
+    }
+
+    protected String keyAt(int node) {
+        return readString(keyOffset[node]);
+    }
+
+    // Compares in place, char by char, exactly as String.compareTo would
+    protected int compareKey(String key, int node) {
+        long offset = keyOffset[node];
+        ByteBuffer buf = chunk(offset);
+        int pos = position(offset);
+        int header = buf.getInt(pos);
+        int length = header & ~LATIN1;
+        boolean latin1 = (header & LATIN1) != 0;
+        pos += 4;
+
+        int common = Math.min(key.length(), length);
+        for (int i = 0; i < common; i++) {
+            char stored = latin1 ? (char) (buf.get(pos + i) & 0xFF) : buf.getChar(pos + 2 * i);
+            char c = key.charAt(i);
+            if (c != stored) return c - stored;
+        }
+        return key.length() - length;
+    }
+
+    protected ArrayList<MultimediaItem> mediaAt(int node) {
+        ArrayList<MultimediaItem> items = new ArrayList<MultimediaItem>(1);
+        for (long offset = mediaOffset[node]; offset != NONE; offset = chunk(offset).getLong(position(offset))) {
+            int type = chunk(offset).getInt(position(offset) + 8);
+            items.add(new MultimediaItem(readString(offset + ITEM_HEADER), type));
+        }
+        return items;
+    }
+
+    // Append one item record to the chain; nothing is abandoned
+    protected void addMedia(int node, MultimediaItem item) {
+        long offset = writeItem(item);
+        if (mediaTail[node] == NONE) mediaOffset[node] = offset;
+        else chunk(mediaTail[node]).putLong(position(mediaTail[node]), offset);
+        mediaTail[node] = offset;
+    }
+
+    protected int removeMedia(int node, int type) {
+        ArrayList<MultimediaItem> items = mediaAt(node);
+        if (items.removeIf(item -> item.getType() == type)) {
+            garbage += mediaBytes(mediaOffset[node]);
+            writeMedia(node, items);
+        }
+        return items.size();
+    }
+
+    protected void release(int node) {
+        garbage += recordBytes(keyOffset[node]) + mediaBytes(mediaOffset[node]);
+        keyOffset[node] = NONE;
+        mediaOffset[node] = NONE;
+        mediaTail[node] = NONE;
+    }
+
+    /* Records */
+
+    // Compact once abandoned records fill half of the reserved memory
+    private void compactIfNeeded() {
+        if (garbage > CHUNK_BYTES && garbage > reservedBytes() / 2) compact();
+    }
+
+    // Copy every live record, key by key in order, into new chunks and drop the old ones.
+    // The tree keeps its shape; only the offsets of each handle change.
+    private void compact() {
+        ArrayList<ByteBuffer> from = chunks;
+        chunks = new ArrayList<ByteBuffer>();
+        top = 0;
+        garbage = 0;
+
+        for (int node = firstNode(); node != NIL; node = nextNode(node)) {
+            long key = keyOffset[node];
+            keyOffset[node] = copyRecord(from, key, stringBytes(from.get(chunkIndex(key)), position(key)));
+
+            long item = mediaOffset[node];
+            mediaOffset[node] = NONE;
+            mediaTail[node] = NONE;
+            while (item != NONE) {
+                ByteBuffer buf = from.get(chunkIndex(item));
+                int pos = position(item);
+                long copy = copyRecord(from, item, ITEM_HEADER + stringBytes(buf, pos + ITEM_HEADER));
+                chunk(copy).putLong(position(copy), NONE);
+                if (mediaTail[node] == NONE) mediaOffset[node] = copy;
+                else chunk(mediaTail[node]).putLong(position(mediaTail[node]), copy);
+                mediaTail[node] = copy;
+                item = buf.getLong(pos);
+            }
+        }
+    }
+
+    // Copy the record of `bytes` bytes at offset in from to newly reserved memory
+    private long copyRecord(ArrayList<ByteBuffer> from, long offset, int bytes) {
+        long copy = reserve(bytes);
+        chunk(copy).put(position(copy), from.get(chunkIndex(offset)), position(offset), bytes);
+        return copy;
+    }
+
+    // Write items as a new chain for node
+    private void writeMedia(int node, ArrayList<MultimediaItem> items) {
+        mediaOffset[node] = NONE;
+        mediaTail[node] = NONE;
+        for (MultimediaItem item : items) addMedia(node, item);
+    }
+
+    private long writeItem(MultimediaItem item) {
+        long offset = reserve(ITEM_HEADER + encodedBytes(item.getContent()));
+        ByteBuffer buf = chunk(offset);
+        int pos = position(offset);
+        buf.putLong(pos, NONE);
+        buf.putInt(pos + 8, item.getType());
+        putString(buf, pos + ITEM_HEADER, item.getContent());
+        return offset;
+    }
+
+    private long writeString(String s) {
+        long offset = reserve(encodedBytes(s));
+        putString(chunk(offset), position(offset), s);
+        return offset;
+    }
+
+    // Encode s at pos; returns the bytes written
+    private static int putString(ByteBuffer buf, int pos, String s) {
+        boolean latin1 = isLatin1(s);
+        buf.putInt(pos, latin1 ? (s.length() | LATIN1) : s.length());
+        pos += 4;
+        for (int i = 0; i < s.length(); i++) {
+            if (latin1) buf.put(pos + i, (byte) s.charAt(i));
+            else buf.putChar(pos + 2 * i, s.charAt(i));
+        }
+        return encodedBytes(s);
+    }
+
+    private String readString(long offset) {
+        ByteBuffer buf = chunk(offset);
+        int pos = position(offset);
+        int header = buf.getInt(pos);
+        int length = header & ~LATIN1;
+        pos += 4;
+
+        char[] chars = new char[length];
+        if ((header & LATIN1) != 0) {
+            for (int i = 0; i < length; i++) chars[i] = (char) (buf.get(pos + i) & 0xFF);
+        } else {
+            for (int i = 0; i < length; i++) chars[i] = buf.getChar(pos + 2 * i);
+        }
+        return new String(chars);
+    }
+
+    private static int encodedBytes(String s) {
+        return 4 + (isLatin1(s) ? s.length() : 2 * s.length());
+    }
+
+    // Size of the string record at pos
+    private static int stringBytes(ByteBuffer buf, int pos) {
+        int header = buf.getInt(pos);
+        int length = header & ~LATIN1;
+        return 4 + (((header & LATIN1) != 0) ? length : 2 * length);
+    }
+
+    private long recordBytes(long offset) {
+        return stringBytes(chunk(offset), position(offset));
+    }
+
+    // Bytes in the item chain starting at offset
+    private long mediaBytes(long offset) {
+        long bytes = 0;
+        for (; offset != NONE; offset = chunk(offset).getLong(position(offset))) {
+            bytes += ITEM_HEADER + stringBytes(chunk(offset), position(offset) + ITEM_HEADER);
+        }
+        return bytes;
+    }
+
+    private static boolean isLatin1(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) return false;
+        }
+        return true;
+    }
+
+    // Offset of `bytes` free bytes; a record never spans two chunks
+    private long reserve(int bytes) {
+        if (bytes > CHUNK_BYTES) throw new IllegalArgumentException("Record of " + bytes + " bytes is too large");
+        int current = chunkIndex(top);
+        if (current == chunks.size() || position(top) + bytes > CHUNK_BYTES) {
+            if (current < chunks.size()) garbage += CHUNK_BYTES - position(top); // Unused tail of the last chunk
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_BYTES));
+            top = (long) (chunks.size() - 1) << CHUNK_SHIFT;
+        }
+        long offset = top;
+        top += bytes;
+        return offset;
+    }
+
+    private ByteBuffer chunk(long offset) {
+        return chunks.get(chunkIndex(offset));
+    }
+
+    private static int chunkIndex(long offset) {
+        return (int) (offset >>> CHUNK_SHIFT);
+    }
+
+    private static int position(long offset) {
+        return (int) (offset & (CHUNK_BYTES - 1));
+    }
+}
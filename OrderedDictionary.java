@@ -0,0 +1,63 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * Ordered dictionary seen only through its keys. Unlike BSTOrderedDictionaryADT
+ * nothing here mentions tree nodes, so Query, DictionaryLoader, DictionarySnapshot
+ * and MutationLog work with any backend: the BST classes implement it on top of
+ * their own root, SkipListOrderedDictionary on top of a concurrent skip list.
+ */
+public interface OrderedDictionary {
+
+	// Number of keys
+	public int size();
+
+	// Media list of key, or null if the key is absent
+	public ArrayList<MultimediaItem> get(String k);
+
+	public void put(String name, String content, int type);
+
+	public void remove(String k) throws DictionaryException;
+
+	public void remove(String k, int type) throws DictionaryException;
+
+	// Smallest key strictly greater than k, or null
+	public Data successor(String k);
+
+	// Largest key strictly less than k, or null
+	public Data predecessor(String k);
+
+	public Data smallest();
+
+	public Data largest();
+
+	// At most count keys >= k, in increasing order
+	public ArrayList<Data> ascendingFrom(String k, int count);
+
+	// At most count keys <= k, in decreasing order
+	public ArrayList<Data> descendingFrom(String k, int count);
+
+	// Replace the contents with the given Data, which must be in strictly increasing key order
+	public void buildFromSorted(ArrayList<Data> sorted);
+
+	// Replace the contents with the given (key, item) pairs.
+	// Pairs are sorted by key (stably, so items keep their input order within a key)
+	// and grouped into one Data per key before buildFromSorted.
+	public default void bulkLoad(ArrayList<String> keys, ArrayList<MultimediaItem> items) {
+		Integer[] order = new Integer[keys.size()];
+		for (int i = 0; i < order.length; i++) order[i] = i;
+		Arrays.sort(order, (a, b) -> keys.get(a).compareTo(keys.get(b))); // Linear when already sorted
+
+		ArrayList<Data> sorted = new ArrayList<Data>();
+		Data last = null;
+		for (int i : order) {
+			String key = keys.get(i);
+			if (last == null || !last.getName().equals(key)) {
+				last = new Data(key);
+				sorted.add(last);
+			}
+			last.add(items.get(i));
+		}
+		buildFromSorted(sorted);
+	}
+}
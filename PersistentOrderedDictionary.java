@@ -0,0 +1,351 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+
+/*
+ * Persistent (path-copying) ordered dictionary. A mutation never changes a node
+ * that is already reachable: it copies the nodes on the path to the change and
+ * then publishes the new root with a single volatile write. Every root returned
+ * by getRoot() is therefore a frozen version of the dictionary, and a reader can
+ * pass it as `r` to get, successor, predecessor, smallest, largest or scan for as
+ * long as it likes without taking any lock, while writers carry on.
+ *
+ * Writers are serialized on a lock; the tree is kept weight-balanced using the
+ * subtree sizes in BSTNode (parameters 3 and 2, as in Adams' balanced trees), so
+ * a mutation copies O(log n) nodes. Parent pointers are not maintained because a
+ * node may be shared by many versions. Data objects are never modified after
+ * publication either: adding or deleting media copies the Data of that key.
+ * get, successor, predecessor, smallest and largest hand out copies, so a caller
+ * cannot change a version through them; a Scan returns the shared Data for speed.
+ * Keys are compared through SearchKey, as in the other backends.
+ *
+ * It is also an OrderedDictionary ("-backend persistent" in Query): each call
+ * without a BSTNode works on the latest version, and ascendingFrom and
+ * descendingFrom read the one version they pin when they start.
+ */
+public class PersistentOrderedDictionary implements BSTOrderedDictionaryADT, OrderedDictionary {
+
+    private static final int DELTA = 3; // A subtree may weigh at most DELTA times its sibling
+    private static final int RATIO = 2; // Chooses between a single and a double rotation
+
+    private static final BSTNode LEAF = BSTNode.LEAF; // Shared by every version and every tree
+
+    private volatile BSTNode root = LEAF;           // Latest published version
+    private final Object writeLock = new Object();  // Serializes mutations
+
+    public PersistentOrderedDictionary() {
+    }
+
+    // Latest version; it stays valid and unchanged however many writes follow
+    public BSTNode getRoot() {
+        return root;
+    }
+
+    public int getNumInternalNodes() {
+        return root.getSize();
+    }
+
+    public int size() {
+        return root.getSize();
+    }
+
+    // Media list of key in version r (the latest version if r is null)
+    public ArrayList<MultimediaItem> get(BSTNode r, String key) {
+        SearchKey probe = new SearchKey(key);
+        BSTNode curr = version(r);
+        while (!curr.isLeaf()) {
+            int cmp = probe.compareTo(curr.getData());
+            if (cmp == 0) return new ArrayList<MultimediaItem>(curr.getData().getMedia()); // Versions share the list
+            curr = (cmp < 0) ? curr.getLeftChild() : curr.getRightChild();
+        }
+        return null;
+    }
+
+    public ArrayList<MultimediaItem> get(String key) {
+        return get(null, key);
+    }
+
+    // Mutations always apply to the latest version, so r is ignored
+    public void put(BSTNode r, String key, String content, int type) {
+        synchronized (writeLock) {
+            root = insert(root, new SearchKey(key), new MultimediaItem(content, type));
+        }
+    }
+
+    public void put(String key, String content, int type) {
+        put(null, key, content, type);
+    }
+
+    public void remove(BSTNode r, String key) throws DictionaryException {
+        synchronized (writeLock) {
+            if (get(root, key) == null) throw new DictionaryException("Key not found.");
+            root = delete(root, new SearchKey(key));
+        }
+    }
+
+    public void remove(String key) throws DictionaryException {
+        remove(null, key);
+    }
+
+    // Remove the media of the given type from key, and key itself if nothing remains
+    public void remove(BSTNode r, String key, int type) throws DictionaryException {
+        synchronized (writeLock) {
+            ArrayList<MultimediaItem> media = get(root, key);
+            if (media == null) throw new DictionaryException("Key not found.");
+
+            Data kept = new Data(key);
+            for (MultimediaItem item : media) {
+                if (item.getType() != type) kept.add(item);
+            }
+            SearchKey probe = new SearchKey(key);
+            root = kept.getMedia().isEmpty() ? delete(root, probe) : replaceData(root, probe, kept);
+        }
+    }
+
+    public void remove(String key, int type) throws DictionaryException {
+        remove(null, key, type);
+    }
+
+    // Smallest key in version r strictly greater than key
+    public Data successor(BSTNode r, String key) {
+        Data result = null;
+        SearchKey probe = new SearchKey(key);
+        BSTNode curr = version(r);
+        while (!curr.isLeaf()) {
+            if (probe.compareTo(curr.getData()) < 0) {
+                result = curr.getData(); // Potential successor
+                curr = curr.getLeftChild();
+            } else {
+                curr = curr.getRightChild();
+            }
+        }
+        return copy(result);
+    }
+
+    public Data successor(String key) {
+        return successor(null, key);
+    }
+
+    // Largest key in version r strictly less than key
+    public Data predecessor(BSTNode r, String key) {
+        Data result = null;
+        SearchKey probe = new SearchKey(key);
+        BSTNode curr = version(r);
+        while (!curr.isLeaf()) {
+            if (probe.compareTo(curr.getData()) > 0) {
+                result = curr.getData(); // Potential predecessor
+                curr = curr.getRightChild();
+            } else {
+                curr = curr.getLeftChild();
+            }
+        }
+        return copy(result);
+    }
+
+    public Data predecessor(String key) {
+        return predecessor(null, key);
+    }
+
+    public Data smallest(BSTNode r) {
+        BSTNode curr = version(r);
+        if (curr.isLeaf()) return null;
+        while (!curr.getLeftChild().isLeaf()) curr = curr.getLeftChild();
+        return copy(curr.getData());
+    }
+
+    public Data smallest() {
+        return smallest(null);
+    }
+
+    public Data largest(BSTNode r) {
+        BSTNode curr = version(r);
+        if (curr.isLeaf()) return null;
+        while (!curr.getRightChild().isLeaf()) curr = curr.getRightChild();
+        return copy(curr.getData());
+    }
+
+    public Data largest() {
+        return largest(null);
+    }
+
+    // In-order scan of version r, starting at the first key >= from
+    public Scan scan(BSTNode r, String from) {
+        return new Scan(version(r), from, true);
+    }
+
+    // Reverse-order scan of version r, starting at the last key <= from
+    public Scan scanDescending(BSTNode r, String from) {
+        return new Scan(version(r), from, false);
+    }
+
+    // At most count keys >= key, all from the version that was latest at the call
+    public ArrayList<Data> ascendingFrom(String key, int count) {
+        return collect(scan(null, key), count);
+    }
+
+    // At most count keys <= key, all from the version that was latest at the call
+    public ArrayList<Data> descendingFrom(String key, int count) {
+        return collect(scanDescending(null, key), count);
+    }
+
+    // Rebuild as a perfectly balanced tree from keys in strictly increasing order
+    public void buildFromSorted(ArrayList<Data> sorted) {
+        synchronized (writeLock) {
+            root = build(sorted, 0, sorted.size() - 1);
+        }
+    }
+
+    // True if every node of the latest version is ordered, correctly sized and weight-balanced
+    public boolean isValid() {
+        return check(root, null, null) >= 0;
+    }
+
+    private BSTNode version(BSTNode r) {
+        return (r == null) ? root : r;
+    }
+
+    // Copies of the first count keys of scan
+    private static ArrayList<Data> collect(Scan scan, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        while (result.size() < count && scan.hasNext()) result.add(copy(scan.next()));
+        return result;
+    }
+
+    // A Data with its own media list, or null for null
+    private static Data copy(Data data) {
+        if (data == null) return null;
+        Data result = new Data(data.getName());
+        for (MultimediaItem item : data.getMedia()) result.add(item);
+        return result;
+    }
+
+    // Copy the path to key, adding item to its (copied) Data or creating the key
+    private static BSTNode insert(BSTNode n, SearchKey key, MultimediaItem item) {
+        if (n.isLeaf()) {
+            Data data = new Data(key.getKey());
+            data.add(item);
+            return node(LEAF, data, LEAF);
+        }
+        int cmp = key.compareTo(n.getData());
+        if (cmp < 0) return balance(insert(n.getLeftChild(), key, item), n.getData(), n.getRightChild());
+        if (cmp > 0) return balance(n.getLeftChild(), n.getData(), insert(n.getRightChild(), key, item));
+
+        Data data = new Data(key.getKey());
+        for (MultimediaItem old : n.getData().getMedia()) data.add(old);
+        data.add(item);
+        return node(n.getLeftChild(), data, n.getRightChild());
+    }
+
+    // Copy the path to key (which must be present) and drop it
+    private static BSTNode delete(BSTNode n, SearchKey key) {
+        int cmp = key.compareTo(n.getData());
+        if (cmp < 0) return balance(delete(n.getLeftChild(), key), n.getData(), n.getRightChild());
+        if (cmp > 0) return balance(n.getLeftChild(), n.getData(), delete(n.getRightChild(), key));
+
+        if (n.getLeftChild().isLeaf()) return n.getRightChild();
+        if (n.getRightChild().isLeaf()) return n.getLeftChild();
+
+        // Two children: the successor takes this node's place
+        BSTNode succ = n.getRightChild();
+        while (!succ.getLeftChild().isLeaf()) succ = succ.getLeftChild();
+        return balance(n.getLeftChild(), succ.getData(), deleteSmallest(n.getRightChild()));
+    }
+
+    private static BSTNode deleteSmallest(BSTNode n) {
+        if (n.getLeftChild().isLeaf()) return n.getRightChild();
+        return balance(deleteSmallest(n.getLeftChild()), n.getData(), n.getRightChild());
+    }
+
+    // Copy the path to key, swapping in data (which holds key); the shape is unchanged
+    private static BSTNode replaceData(BSTNode n, SearchKey key, Data data) {
+        int cmp = key.compareTo(n.getData());
+        if (cmp < 0) return node(replaceData(n.getLeftChild(), key, data), n.getData(), n.getRightChild());
+        if (cmp > 0) return node(n.getLeftChild(), n.getData(), replaceData(n.getRightChild(), key, data));
+        return node(n.getLeftChild(), data, n.getRightChild());
+    }
+
+    // New node over l and r, rotating once or twice if one side became too heavy
+    private static BSTNode balance(BSTNode l, Data data, BSTNode r) {
+        int wl = l.getSize() + 1;
+        int wr = r.getSize() + 1;
+        if (wr > DELTA * wl) {
+            BSTNode rl = r.getLeftChild();
+            BSTNode rr = r.getRightChild();
+            if (rl.getSize() + 1 < RATIO * (rr.getSize() + 1)) {
+                return node(node(l, data, rl), r.getData(), rr); // Single left rotation
+            }
+            return node(node(l, data, rl.getLeftChild()), rl.getData(), node(rl.getRightChild(), r.getData(), rr));
+        }
+        if (wl > DELTA * wr) {
+            BSTNode ll = l.getLeftChild();
+            BSTNode lr = l.getRightChild();
+            if (lr.getSize() + 1 < RATIO * (ll.getSize() + 1)) {
+                return node(ll, l.getData(), node(lr, data, r)); // Single right rotation
+            }
+            return node(node(ll, l.getData(), lr.getLeftChild()), lr.getData(), node(lr.getRightChild(), data, r));
+        }
+        return node(l, data, r);
+    }
+
+    private static BSTNode node(BSTNode l, Data data, BSTNode r) {
+        BSTNode n = new BSTNode(null, l, r, data);
+        n.setSize(l.getSize() + r.getSize() + 1);
+        return n;
+    }
+
+    private static BSTNode build(ArrayList<Data> sorted, int lo, int hi) {
+        if (lo > hi) return LEAF;
+        int mid = (lo + hi) >>> 1;
+        return node(build(sorted, lo, mid - 1), sorted.get(mid), build(sorted, mid + 1, hi));
+    }
+
+    // Size of the subtree at n if it is valid within (lo, hi), else -1
+    private static int check(BSTNode n, Data lo, Data hi) {
+        if (n.isLeaf()) return (n.getSize() == 0) ? 0 : -1;
+        SearchKey key = new SearchKey(n.getData().getName());
+        if ((lo != null && key.compareTo(lo) <= 0) || (hi != null && key.compareTo(hi) >= 0)) return -1;
+
+        int sl = check(n.getLeftChild(), lo, n.getData());
+        int sr = check(n.getRightChild(), n.getData(), hi);
+        if (sl < 0 || sr < 0 || n.getSize() != sl + sr + 1) return -1;
+        if (sl + 1 > DELTA * (sr + 1) || sr + 1 > DELTA * (sl + 1)) return -1;
+        return n.getSize();
+    }
+
+    // Iterator over one version, holding the unvisited spine on a stack: the left spine
+    // when ascending, the right spine when descending
+    public static class Scan {
+        private final ArrayDeque<BSTNode> stack = new ArrayDeque<BSTNode>();
+        private final boolean ascending;
+
+        private Scan(BSTNode r, String from, boolean ascending) {
+            this.ascending = ascending;
+            SearchKey probe = new SearchKey(from);
+            BSTNode curr = r;
+            while (!curr.isLeaf()) {
+                int cmp = probe.compareTo(curr.getData());
+                if (ascending ? cmp <= 0 : cmp >= 0) {
+                    stack.push(curr); // curr and the subtree beyond it are still to come
+                    curr = ascending ? curr.getLeftChild() : curr.getRightChild();
+                } else {
+                    curr = ascending ? curr.getRightChild() : curr.getLeftChild();
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        public Data next() {
+            if (stack.isEmpty()) throw new NoSuchElementException();
+            BSTNode n = stack.pop();
+            BSTNode curr = ascending ? n.getRightChild() : n.getLeftChild();
+            while (!curr.isLeaf()) {
+                stack.push(curr);
+                curr = ascending ? curr.getLeftChild() : curr.getRightChild();
+            }
+            return n.getData();
+        }
+    }
+}
@@ -17,12 +17,20 @@ public class PictureViewer extends JFrame {
     JPanel contentPane;
     JLabel imageLabel = new JLabel();
     JLabel headerLabel = new JLabel();
+    MediaCache cache; // Decoded images shared between viewers, or null
 
     /**
      * Constructor.
      */
     public PictureViewer() {}
 
+    /**
+     * Constructor for a viewer that takes decoded images from cache.
+     */
+    public PictureViewer(MediaCache newCache) {
+        cache = newCache;
+    }
+
    /**
      * Display the picture in a window on the screen.
      */
@@ -34,7 +42,7 @@ public class PictureViewer extends JFrame {
             setTitle(fileName);
 
             //ImageIcon imicon = new ImageIcon(this.getClass().getResource(fileName));
-            ImageIcon imicon = new ImageIcon(fileName);			
+            ImageIcon imicon = (cache != null) ? cache.image(fileName) : new ImageIcon(fileName);
             imageLabel.setIcon(imicon);
             contentPane.add(imageLabel, java.awt.BorderLayout.CENTER);
 
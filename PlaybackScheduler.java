@@ -0,0 +1,197 @@
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+
+/*
+ * Renders multimedia items off the command thread. submit returns at once with a
+ * Playback handle; sounds play to the end on a pool of at most maxSounds threads
+ * (more wait in a bounded queue), and image and HTML windows are opened one at a
+ * time by a display thread, which builds each window on the Swing event dispatch
+ * thread and waits for it there. A Playback can be cancelled while queued or, for a
+ * sound, while it plays. Errors are printed from the worker, as handleGet used to.
+ *
+ * The worker threads are daemons, so a forgotten scheduler does not keep the JVM
+ * alive; shutdown stops everything that is still playing.
+ */
+public class PlaybackScheduler {
+
+    private final ThreadPoolExecutor sounds;  // At most maxSounds clips at once, the rest queued
+    private final ExecutorService displays;   // Opens image and HTML windows in order
+    private final ConcurrentHashMap<Integer, Playback> active = new ConcurrentHashMap<Integer, Playback>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final MediaCache cache;           // Decoded sounds and images, or null
+
+    public PlaybackScheduler(int maxSounds, int maxQueued) {
+        this(maxSounds, maxQueued, null);
+    }
+
+    // As above, decoding sounds and images through cache
+    public PlaybackScheduler(int maxSounds, int maxQueued, MediaCache cache) {
+        this.cache = cache;
+        sounds = new ThreadPoolExecutor(maxSounds, maxSounds, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueued), daemonThreads("playback-sound"));
+        displays = Executors.newSingleThreadExecutor(daemonThreads("playback-display"));
+    }
+
+    // Start rendering a sound (type 2), image (3) or HTML (4) item in the background.
+    // Throws MultimediaException if the item is text or too many sounds are queued.
+    public Playback submit(MultimediaItem item) throws MultimediaException {
+        String content = item.getContent();
+        ExecutorService executor;
+        Renderer renderer;
+        switch (item.getType()) {
+            case 2:
+                executor = sounds;
+                renderer = () -> new SoundPlayer(cache).playToEnd(content);
+                break;
+            case 3:
+                executor = displays;
+                renderer = () -> onEventThread(() -> new PictureViewer(cache).show(content));
+                break;
+            case 4:
+                executor = displays;
+                renderer = () -> onEventThread(() -> new ShowHTML().show(content));
+                break;
+            default:
+                throw new MultimediaException("Nothing to play for " + content);
+        }
+
+        Playback playback = new Playback(nextId.getAndIncrement(), item, renderer);
+        active.put(playback.getId(), playback);
+        try {
+            executor.execute(playback);
+        } catch (RejectedExecutionException e) {
+            active.remove(playback.getId());
+            throw new MultimediaException("Too many sounds waiting to play " + content);
+        }
+        return playback;
+    }
+
+    // Cancel one playback; returns false if it is unknown or already finished
+    public boolean cancel(int id) {
+        Playback playback = active.get(id);
+        return playback != null && playback.cancel();
+    }
+
+    // Cancel everything queued or playing; returns how many were cancelled
+    public int cancelAll() {
+        int cancelled = 0;
+        for (Playback playback : new ArrayList<Playback>(active.values())) {
+            if (playback.cancel()) cancelled++;
+        }
+        return cancelled;
+    }
+
+    // Playbacks queued or in progress
+    public int activeCount() {
+        return active.size();
+    }
+
+    // Cancel everything and stop the worker threads
+    public void shutdown() {
+        cancelAll();
+        sounds.shutdownNow();
+        displays.shutdownNow();
+    }
+
+    // Run a Swing renderer on the event dispatch thread and wait for it, so windows are
+    // still opened one at a time and in order
+    private static void onEventThread(Renderer renderer) throws MultimediaException, InterruptedException {
+        Exception[] failure = new Exception[1];
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                try {
+                    renderer.render();
+                } catch (Exception e) {
+                    failure[0] = e; // Includes HeadlessException from the window's constructor
+                }
+            });
+        } catch (InvocationTargetException e) {
+            failure[0] = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        }
+        if (failure[0] instanceof MultimediaException) throw (MultimediaException) failure[0];
+        if (failure[0] != null) throw new MultimediaException(failure[0].toString());
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread t = new Thread(task, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // Renders one item on a worker thread
+    private interface Renderer {
+        void render() throws MultimediaException, InterruptedException;
+    }
+
+    // Handle on one submitted item
+    public class Playback extends FutureTask<Void> {
+        private final int id;
+        private final MultimediaItem item;
+
+        private Playback(int id, MultimediaItem item, Renderer renderer) {
+            super(() -> {
+                renderer.render();
+                return null;
+            });
+            this.id = id;
+            this.item = item;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public MultimediaItem getItem() {
+            return item;
+        }
+
+        // Stop the item if it is queued or playing; returns false if it had already finished
+        public boolean cancel() {
+            return cancel(true);
+        }
+
+        // Wait up to millis for the item to finish; returns false on timeout
+        public boolean await(long millis) throws InterruptedException {
+            try {
+                get(millis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                return false;
+            } catch (ExecutionException | CancellationException e) {
+                // Finished, just not successfully
+            }
+            return true;
+        }
+
+        // Called once the item finishes, fails or is cancelled
+        protected void done() {
+            active.remove(id);
+            if (isCancelled()) return;
+            try {
+                get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                String message = (cause.getMessage() != null) ? cause.getMessage() : cause.toString();
+                System.out.println("Error processing multimedia item: " + message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
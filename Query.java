@@ -1,36 +1,198 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class Query {
 
-    private BSTOrderedDictionary bst; // The BST-based ordered dictionary
+    private OrderedDictionary dict;   // The ordered dictionary; see the -backend option
+    private int workers;              // Threads used to parse text input files
+    private MutationLog log;          // Write-ahead log of add/remove/delete, or null
+    private String logFile;           // Name of the log; its compacted snapshot is logFile + ".snapshot"
+    private RangeQueryCache rangeCache; // Cached next/prev results, or null
+    private MediaCache media = new MediaCache(MEDIA_CACHE_BYTES); // Decoded popular sounds and images
+    private PlaybackScheduler player = new PlaybackScheduler(SOUND_CHANNELS, SOUND_QUEUE, media); // Sounds, images, HTML
+    private MediaValidator.Report mediaReport; // Result of probing the media files, or null if they were not probed
 
-    // Constructor reads input file and builds the BST
+    private static final long COMPACT_RECORDS = 100000; // Log length that triggers a compaction
+    private static final int RANGE_CACHE_ENTRIES = 1024; // Default size of the next/prev result cache
+    private static final int SOUND_CHANNELS = 4;         // Sounds that may play at once
+    private static final int SOUND_QUEUE = 64;           // Sounds that may wait for a channel
+    private static final long MEDIA_CACHE_BYTES = 64L << 20; // Decoded sounds and images kept in memory
+    private static final int BATCH_RUN = 4096;           // Most read-only commands run together in batch mode
+
+    // Constructor reads input file and builds the dictionary, parsing on every available core
     public Query(String inputFile) {
-        bst = new BSTOrderedDictionary(); // Initialize the dictionary
+        this(inputFile, Runtime.getRuntime().availableProcessors());
+    }
 
-        try (BufferedReader br = new BufferedReader(new FileReader(inputFile))) {
-            String keyLine;
-            while ((keyLine = br.readLine()) != null) {
-                keyLine = keyLine.toLowerCase();  // Convert key to lowercase for uniformity
-                String contentLine = br.readLine(); // Read associated content
-                if (contentLine == null) break;
+    // Constructor reads input file and builds the dictionary, parsing on the given number of threads.
+    // The input may be a text file of key/content lines or a snapshot written by 'save'.
+    public Query(String inputFile, int workers) {
+        this(inputFile, workers, null);
+    }
 
-                int type = determineType(contentLine); // Determine type based on content
-                bst.put(bst.getRoot(), keyLine, contentLine, type); // Insert into BST
-            }
+    // As above, and when logFile is not null, replays and then appends to that mutation log
+    public Query(String inputFile, int workers, String logFile) {
+        this(inputFile, workers, logFile, "tree");
+    }
+
+    // As above, storing the keys in the given backend: "tree", "skiplist", "btree", "array",
+    // "offheap", "compact", "concurrent" or "persistent"
+    public Query(String inputFile, int workers, String logFile, String backend) {
+        if (backend.equals("skiplist")) {
+            dict = new SkipListOrderedDictionary(); // Lock-free, for many concurrent writers
+        } else if (backend.equals("btree")) {
+            dict = new BPlusTreeOrderedDictionary(); // Wide nodes, for very large dictionaries
+        } else if (backend.equals("array")) {
+            dict = new ArrayOrderedDictionary(); // Nodes in int arrays, for the least per-key overhead
+        } else if (backend.equals("offheap")) {
+            dict = new OffHeapOrderedDictionary(); // Keys and media in direct memory, out of the GC's way
+        } else if (backend.equals("compact")) {
+            dict = new CompactOrderedDictionary(); // Front-coded keys, for the least memory per key
+        } else if (backend.equals("concurrent")) {
+            dict = new ConcurrentOrderedDictionary(); // Lock-free reads, for parallel batches beside writers
+        } else if (backend.equals("persistent")) {
+            dict = new PersistentOrderedDictionary(); // Versioned, so next/prev read one frozen tree
+        } else {
+            dict = new RedBlackOrderedDictionary(); // Balanced, so sorted input files stay O(log n) per lookup
+        }
+        this.workers = workers;
+        this.rangeCache = new RangeQueryCache(RANGE_CACHE_ENTRIES, dict);
+
+        try {
+            loadFile(inputFile);
         } catch (IOException e) {
             System.out.println("Error reading input file: " + e.getMessage());
         }
+
+        if (logFile != null) {
+            try {
+                openLog(logFile);
+            } catch (IOException e) {
+                System.out.println("Error opening mutation log: " + e.getMessage());
+            }
+        }
+    }
+
+    // Serve exact 'get' commands from a hash index kept beside the tree; returns
+    // false (and changes nothing) if the backend is not one of the BST dictionaries
+    public boolean useHashIndex() {
+        if (!(dict instanceof BSTOrderedDictionary)) return false;
+        ((BSTOrderedDictionary) dict).setHashIndex(true);
+        return true;
+    }
+
+    // Cache up to capacity next/prev results (0 turns the cache off); drops what is cached
+    public void useRangeCache(int capacity) {
+        rangeCache = (capacity > 0) ? new RangeQueryCache(capacity, dict) : null;
+    }
+
+    // Decode the sounds and images of the given keys now, so their first 'get' finds
+    // them in the media cache; returns how many files were loaded
+    public int preloadMedia(String[] keys) {
+        int loaded = 0;
+        for (String key : keys) {
+            ArrayList<MultimediaItem> items = dict.get(key.toLowerCase());
+            if (items == null) continue;
+            for (MultimediaItem item : items) {
+                if (item.getType() != 2 && item.getType() != 3) continue;
+                try {
+                    media.preload(item.getContent(), item.getType());
+                    loaded++;
+                } catch (MultimediaException e) {
+                    System.out.println("Error processing multimedia item: " + e.getMessage());
+                }
+            }
+        }
+        return loaded;
+    }
+
+    // Probe every sound, image and HTML file named in the dictionary, so that 'get' skips
+    // broken ones without trying them; 'load' probes the new contents again
+    public MediaValidator.Report validateMedia() throws InterruptedException {
+        mediaReport = new MediaValidator(workers).validate(dict);
+        return mediaReport;
+    }
+
+    // Run the commands in, one per line, up to "end" or the end of the input, writing each
+    // non-empty result to out in command order. With parallel set, every run of consecutive
+    // read-only commands (see isReadOnly) is spread over the worker threads; nothing changes
+    // the dictionary while such a run executes. Returns the number of commands run.
+    public long runBatch(BufferedReader in, Writer out, boolean parallel) throws IOException {
+        ForkJoinPool pool = (parallel && workers > 1) ? new ForkJoinPool(workers) : null;
+        ArrayList<String> run = new ArrayList<String>(); // Read-only commands not yet executed
+        long count = 0;
+        try {
+            String command;
+            while ((command = in.readLine()) != null && !command.trim().equalsIgnoreCase("end")) {
+                count++;
+                if (pool != null && isReadOnly(command)) {
+                    run.add(command);
+                    if (run.size() == BATCH_RUN) runReadOnly(pool, run, out);
+                    continue;
+                }
+                runReadOnly(pool, run, out); // Earlier reads must see the dictionary before this command
+                writeResult(out, processCommand(command));
+            }
+            runReadOnly(pool, run, out);
+        } finally {
+            if (pool != null) pool.shutdown();
+        }
+        out.flush();
+        return count;
     }
 
-    // Determines the type of a multimedia item based on file extension or content
-    private int determineType(String content) {
-        content = content.toLowerCase();
-        if (content.endsWith(".wav") || content.endsWith(".mid")) return 2; // Audio
-        if (content.endsWith(".jpg") || content.endsWith(".gif")) return 3; // Image
-        if (content.endsWith(".html")) return 4; // HTML
-        return 1; // Text by default
+    // Stop any playback, then flush the mutation log, if any, and release it
+    public void close() {
+        player.shutdown();
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.out.println("Error closing mutation log: " + e.getMessage());
+        }
+        log = null;
+    }
+
+    // Attach the mutation log: a compacted snapshot of it replaces the input file, then
+    // any records newer than that snapshot are replayed on top
+    private void openLog(String file) throws IOException {
+        logFile = file;
+        long snapshotGeneration = 0;
+        if (new File(file + ".snapshot").exists()) {
+            snapshotGeneration = DictionarySnapshot.load(file + ".snapshot", dict);
+        }
+
+        log = new MutationLog(file, snapshotGeneration + 1);
+        if (log.getGeneration() > snapshotGeneration) {
+            log.replay(dict);
+        } else {
+            log.reset(snapshotGeneration + 1); // Crashed after compacting; records are in the snapshot
+        }
+    }
+
+    // Fold the log into a snapshot once it grows past COMPACT_RECORDS
+    private void compactIfNeeded() throws IOException {
+        if (log != null && log.getRecordCount() >= COMPACT_RECORDS) compact();
+    }
+
+    // Save the current contents as the log's snapshot, then start an empty log generation.
+    // save returns only once the snapshot is durable, so the log can then be truncated.
+    private void compact() throws IOException {
+        log.sync();
+        DictionarySnapshot.save(dict, logFile + ".snapshot", log.getGeneration());
+        log.reset(log.getGeneration() + 1);
+    }
+
+    // Replace the dictionary contents with a snapshot or a text input file
+    private void loadFile(String file) throws IOException {
+        if (DictionarySnapshot.isSnapshot(file)) {
+            DictionarySnapshot.load(file, dict); // Keys are stored in order, one pass to rebuild
+        } else {
+            new DictionaryLoader(workers).load(file, dict); // Parse in parallel, then bulk-build
+        }
     }
 
     // Public instance method to process user commands
@@ -50,24 +212,32 @@ public class Query {
                 case "remove":
                     if (!st.hasMoreTokens()) return "Invalid command";
                     String keyRemove = st.nextToken().toLowerCase();
+                    if (dict.get(keyRemove) == null) return "No record in the ordered dictionary has key " + keyRemove + ".";
+                    if (log != null) log.sync(log.logRemove(keyRemove)); // Durable before the tree changes
                     try {
-                        bst.remove(bst.getRoot(), keyRemove); // Remove entire node
-                        return "";
+                        dict.remove(keyRemove); // Remove entire key
                     } catch (DictionaryException e) {
                         return "No record in the ordered dictionary has key " + keyRemove + ".";
                     }
+                    if (rangeCache != null) rangeCache.invalidate(keyRemove);
+                    compactIfNeeded();
+                    return "";
 
                 case "delete":
                     if (!st.hasMoreTokens()) return "Invalid command";
                     String keyDelete = st.nextToken().toLowerCase();
                     if (!st.hasMoreTokens()) return "Invalid command";
                     int typeDelete = Integer.parseInt(st.nextToken()); // Parse type
+                    if (dict.get(keyDelete) == null) return "No record in the ordered dictionary has key " + keyDelete + ".";
+                    if (log != null) log.sync(log.logDelete(keyDelete, typeDelete)); // Durable before the tree changes
                     try {
-                        bst.remove(bst.getRoot(), keyDelete, typeDelete); // Remove specific media
-                        return "";
+                        dict.remove(keyDelete, typeDelete); // Remove specific media
                     } catch (DictionaryException e) {
                         return "No record in the ordered dictionary has key " + keyDelete + ".";
                     }
+                    if (rangeCache != null) rangeCache.invalidate(keyDelete);
+                    compactIfNeeded();
+                    return "";
 
                 case "add":
                     if (!st.hasMoreTokens()) return "Invalid command";
@@ -76,7 +246,10 @@ public class Query {
                     String contentAdd = st.nextToken();
                     if (!st.hasMoreTokens()) return "Invalid command";
                     int typeAdd = Integer.parseInt(st.nextToken());
-                    bst.put(bst.getRoot(), keyAdd, contentAdd, typeAdd); // Add media to BST
+                    if (log != null) log.sync(log.logAdd(keyAdd, contentAdd, typeAdd)); // Durable before the tree changes
+                    dict.put(keyAdd, contentAdd, typeAdd); // Add media to the dictionary
+                    if (rangeCache != null) rangeCache.invalidate(keyAdd);
+                    compactIfNeeded();
                     return "";
 
                 case "next":
@@ -94,23 +267,88 @@ public class Query {
                     return handlePrev(keyPrev, dPrev); // Print key + d predecessors
 
                 case "first":
-                    Data smallest = bst.smallest(bst.getRoot());
+                    Data smallest = dict.smallest();
                     if (smallest != null) return smallest.getName(); // Smallest key
                     return "The ordered dictionary is empty.";
 
                 case "last":
-                    Data largest = bst.largest(bst.getRoot());
+                    Data largest = dict.largest();
                     if (largest != null) return largest.getName(); // Largest key
                     return "The ordered dictionary is empty.";
 
                 case "size":
-                    return "There are " + bst.getNumInternalNodes() + " keys in the ordered dictionary"; // Count of keys
+                    return "There are " + dict.size() + " keys in the ordered dictionary"; // Count of keys
+
+                case "rank":
+                    if (!st.hasMoreTokens()) return "Invalid command";
+                    if (!(dict instanceof BSTOrderedDictionary)) return "rank needs the tree backend";
+                    BSTOrderedDictionary rankTree = (BSTOrderedDictionary) dict; // Subtree sizes live in the tree nodes
+                    String keyRank = st.nextToken().toLowerCase();
+                    return "There are " + rankTree.rank(rankTree.getRoot(), keyRank) + " keys smaller than " + keyRank; // Position of key
+
+                case "select":
+                    if (!st.hasMoreTokens()) return "Invalid command";
+                    if (!(dict instanceof BSTOrderedDictionary)) return "select needs the tree backend";
+                    BSTOrderedDictionary selectTree = (BSTOrderedDictionary) dict;
+                    int position = Integer.parseInt(st.nextToken());
+                    Data selected = selectTree.select(selectTree.getRoot(), position); // Key with position smaller keys
+                    if (selected != null) return selected.getName();
+                    return "There is no key at position " + position;
+
+                case "count":
+                    if (!st.hasMoreTokens()) return "Invalid command";
+                    if (!(dict instanceof BSTOrderedDictionary)) return "count needs the tree backend";
+                    BSTOrderedDictionary countTree = (BSTOrderedDictionary) dict;
+                    String keyLo = st.nextToken().toLowerCase();
+                    if (!st.hasMoreTokens()) return "Invalid command";
+                    String keyHi = st.nextToken().toLowerCase();
+                    return "There are " + countTree.countRange(countTree.getRoot(), keyLo, keyHi) + " keys between " + keyLo + " and " + keyHi; // Keys in [lo, hi]
+
+                case "save":
+                    if (!st.hasMoreTokens()) return "Invalid command";
+                    String saveFile = st.nextToken();
+                    try {
+                        DictionarySnapshot.save(dict, saveFile); // Binary snapshot for fast restart
+                        return "";
+                    } catch (IOException e) {
+                        return "Error writing snapshot: " + e.getMessage();
+                    }
+
+                case "load":
+                    if (!st.hasMoreTokens()) return "Invalid command";
+                    String loadFile = st.nextToken();
+                    try {
+                        loadFile(loadFile); // Replaces the current contents
+                    } catch (IOException e) {
+                        return "Error reading input file: " + e.getMessage();
+                    }
+                    if (rangeCache != null) rangeCache.clear();
+                    if (mediaReport != null) validateMedia();
+                    if (log != null) compact(); // Logged records no longer apply to the new contents
+                    return "";
+
+                case "stop":
+                    if (!st.hasMoreTokens()) {
+                        return "Stopped " + player.cancelAll() + " playbacks"; // Everything queued or playing
+                    }
+                    int stopId = Integer.parseInt(st.nextToken());
+                    if (player.cancel(stopId)) return "Stopped playback " + stopId;
+                    return "No playback " + stopId + " is running";
+
+                case "stats":
+                    String rangeStats = (rangeCache == null) ? "Range cache is off" : rangeCache.stats();
+                    return rangeStats + "\n" + media.stats(); // Hit/miss counters of both caches
 
                 default:
                     return "Invalid command";
             }
         } catch (NumberFormatException e) {
             return "Invalid command"; // Invalid integer for type/d
+        } catch (IOException e) {
+            return "Error writing mutation log: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted";
         } catch (Exception e) {
             return "Invalid command"; // Catch-all for other exceptions
         }
@@ -121,12 +359,88 @@ public class Query {
         String result, nextCommand;
         StringReader keyboard = new StringReader(); // Placeholder for user input
 
-        if (args.length != 1) {
-            System.out.println("Usage: java Query filename");
+        String inputFile = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        String logFile = null;
+        String backend = "tree";
+        boolean hashIndex = false;
+        int cacheEntries = RANGE_CACHE_ENTRIES;
+        String preload = null;
+        boolean validate = false;
+        String batch = null;
+        boolean parallel = false;
+        boolean badArgs = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-workers") && i + 1 < args.length) {
+                try {
+                    workers = Integer.parseInt(args[++i]); // Threads used to parse the input file
+                } catch (NumberFormatException e) {
+                    badArgs = true;
+                }
+            } else if (args[i].equals("-log") && i + 1 < args.length) {
+                logFile = args[++i]; // Write-ahead log replayed at startup
+            } else if (args[i].equals("-backend") && i + 1 < args.length) {
+                backend = args[++i]; // Dictionary implementation
+                if (!backend.equals("tree") && !backend.equals("skiplist") && !backend.equals("btree")
+                        && !backend.equals("array") && !backend.equals("offheap")
+                        && !backend.equals("compact") && !backend.equals("concurrent")
+                        && !backend.equals("persistent")) badArgs = true;
+            } else if (args[i].equals("-cache") && i + 1 < args.length) {
+                try {
+                    cacheEntries = Integer.parseInt(args[++i]); // next/prev results kept; 0 for none
+                } catch (NumberFormatException e) {
+                    badArgs = true;
+                }
+            } else if (args[i].equals("-preload") && i + 1 < args.length) {
+                preload = args[++i]; // Comma-separated hot keys whose media are decoded at startup
+            } else if (args[i].equals("-batch") && i + 1 < args.length) {
+                batch = args[++i]; // Command file, or - for standard input; no prompts
+            } else if (args[i].equals("-parallel")) {
+                parallel = true; // Spread runs of read-only batch commands over the workers
+            } else if (args[i].equals("-validate")) {
+                validate = true; // Probe media files at startup and report broken ones
+            } else if (args[i].equals("-index")) {
+                hashIndex = true; // Hash index for exact gets
+            } else if (inputFile == null) {
+                inputFile = args[i];
+            } else {
+                badArgs = true;
+            }
+        }
+
+        if (badArgs || inputFile == null) {
+            System.out.println("Usage: java Query [-workers n] [-log logfile] [-backend tree|skiplist|btree|array|offheap|compact|concurrent|persistent] [-index] [-cache entries]\n"
+                    + "             [-preload key,key,...] [-validate] [-batch file|- [-parallel]] filename");
             System.exit(0);
         }
 
-        Query myProgram = new Query(args[0]); // Build BST from file
+        Query myProgram = new Query(inputFile, workers, logFile, backend); // Build the dictionary from file
+        myProgram.useRangeCache(cacheEntries);
+        if (validate) {
+            try {
+                System.out.println(myProgram.validateMedia());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+        if (preload != null) {
+            System.out.println("Preloaded " + myProgram.preloadMedia(preload.split(",")) + " media files");
+        }
+        if (hashIndex && !myProgram.useHashIndex()) {
+            System.out.println("-index needs the tree backend; continuing without it");
+        }
+
+        if (batch != null) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16); // One write per 64 KB of results
+            try (BufferedReader in = new BufferedReader(batch.equals("-")
+                    ? new InputStreamReader(System.in) : new FileReader(batch), 1 << 16)) {
+                myProgram.runBatch(in, out, parallel);
+            } catch (IOException e) {
+                System.out.println("Error running batch: " + e.getMessage());
+            }
+            myProgram.close();
+            return;
+        }
 
         while (true) {
             nextCommand = keyboard.read("Enter next command: "); // Prompt user
@@ -137,133 +451,160 @@ public class Query {
                 System.out.println(result); // Print any output
             }
         }
+        myProgram.close(); // Make every logged mutation durable
+    }
+
+    // True if command cannot change the dictionary or start a playback: next, prev, first,
+    // last, size, and get of a missing key or of one with only text items
+    private boolean isReadOnly(String command) {
+        StringTokenizer st = new StringTokenizer(command);
+        if (!st.hasMoreTokens()) return false;
+        switch (st.nextToken().toLowerCase()) {
+            case "next":
+            case "prev":
+            case "first":
+            case "last":
+            case "size":
+                return true;
+            case "get":
+                if (!st.hasMoreTokens()) return false;
+                ArrayList<MultimediaItem> items = dict.get(st.nextToken().toLowerCase());
+                if (items == null) return true;
+                for (MultimediaItem item : items) {
+                    if (item.getType() != 1) return false;
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Execute the commands of run on the pool and write their results in order, then empty run
+    private void runReadOnly(ForkJoinPool pool, ArrayList<String> run, Writer out) throws IOException {
+        if (run.isEmpty()) return;
+        String[] results = new String[run.size()];
+        try {
+            pool.submit(() -> IntStream.range(0, results.length).parallel()
+                    .forEach(i -> results[i] = processCommand(run.get(i)))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running commands");
+        } catch (ExecutionException e) {
+            throw new IOException("Error running commands: " + e.getCause());
+        }
+        for (String result : results) writeResult(out, result);
+        run.clear();
+    }
+
+    private static void writeResult(Writer out, String result) throws IOException {
+        if (result == null || result.isEmpty()) return;
+        out.write(result);
+        out.write(System.lineSeparator());
     }
 
     // PRIVATE helper to handle 'get' command
     private String handleGet(String key) {
-        ArrayList<MultimediaItem> items = bst.get(bst.getRoot(), key);
+        ArrayList<MultimediaItem> items = dict.get(key);
         if (items == null) {
             // Key not found → display predecessor and successor
             StringBuilder sb = new StringBuilder();
             sb.append("The word ").append(key).append(" is not in the ordered dictionary.");
 
-            Data pred = bst.predecessor(bst.getRoot(), key);
-            Data succ = bst.successor(bst.getRoot(), key);
+            Data pred = dict.predecessor(key);
+            Data succ = dict.successor(key);
 
             sb.append("\nPreceding word: ").append(pred != null ? pred.getName() : "");
             sb.append("\nFollowing word: ").append(succ != null ? succ.getName() : "");
             return sb.toString();
         }
 
-        // Key exists → process each multimedia item
+        // Key exists → process each multimedia item; media render in the background.
+        // Lines are returned rather than printed, so batch mode can buffer them.
+        StringJoiner lines = new StringJoiner("\n");
         for (MultimediaItem item : items) {
+            MediaInfo info = infoOf(item);
+            if (info != null && !info.isValid()) {
+                lines.add("Skipping " + item.getContent() + ": " + info.getProblem()); // Found broken when probed
+                continue;
+            }
             try {
                 switch (item.getType()) {
                     case 1: // Text
-                        System.out.println(item.getContent()); 
+                        lines.add(item.getContent());
                         break;
                     case 2: // Audio
-                        SoundPlayer sp = new SoundPlayer();
-                        sp.play(item.getContent());
+                        PlaybackScheduler.Playback sound = player.submit(item);
+                        lines.add("Playing " + item.getContent() + " (stop " + sound.getId() + " to cancel)");
                         break;
                     case 3: // Image
-                        PictureViewer pv = new PictureViewer();
-                        pv.show(item.getContent());
-                        break;
                     case 4: // HTML
-                        ShowHTML sh = new ShowHTML();
-                        sh.show(item.getContent());
+                        player.submit(item);
                         break;
                 }
             } catch (MultimediaException e) {
-                System.out.println("Error processing multimedia item: " + e.getMessage());
+                lines.add("Error processing multimedia item: " + e.getMessage());
             }
         }
-        return "";
+        return lines.toString();
+    }
+
+    // What probing found for item's file, or null if it was not probed. Backends that copy
+    // their items lose MultimediaItem.setInfo, so the report is asked as well.
+    private MediaInfo infoOf(MultimediaItem item) {
+        if (item.getInfo() != null) return item.getInfo();
+        if (mediaReport == null || item.getType() < 2) return null;
+        return mediaReport.info(item.getContent());
+    }
+
+    // Most keys 'next key d' or 'prev key d' lists: key plus d neighbours, at least
+    // the key itself for a negative d, and no overflow for Integer.MAX_VALUE
+    private static int listLimit(int d) {
+        if (d < 0) return 1;
+        return (d == Integer.MAX_VALUE) ? d : d + 1;
     }
 
     // PRIVATE helper to handle 'next' command
     // Finds key (or nearest greater) and returns key + d successors
     private String handleNext(String key, int d) {
+        int limit = listLimit(d);
+        String cached = (rangeCache == null) ? null : rangeCache.get(true, key, limit - 1);
+        if (cached != null) return cached;
+
         List<String> keys = new ArrayList<>();
-        ArrayList<MultimediaItem> items = bst.get(bst.getRoot(), key);
-        Data current;
-        
-        if (items != null) {
-            keys.add(key); // Key exists → add first
-            current = bst.successor(bst.getRoot(), key);
-            while (current != null && keys.size() <= d) {
-                keys.add(current.getName()); // Add successors
-                current = bst.successor(bst.getRoot(), current.getName());
-            }
-        } else {
-            current = findFirstGreaterOrEqual(key); // Key doesn't exist → find first ≥ key
-            while (current != null && keys.size() <= d) {
-                keys.add(current.getName());
-                current = bst.successor(bst.getRoot(), current.getName());
-            }
+        for (Data data : dict.ascendingFrom(key, limit)) { // One seek, then d steps forward
+            keys.add(data.getName());
         }
-        
-        if (keys.isEmpty()) return "There are no keys larger than or equal to " + key;
-        return String.join(" ", keys);
+
+        String result;
+        if (keys.isEmpty()) result = "There are no keys larger than or equal to " + key;
+        else result = String.join(" ", keys);
+        if (rangeCache != null) {
+            // Read [key, last key listed], or on to the end if fewer than limit keys were left
+            String end = (!keys.isEmpty() && keys.size() == limit) ? keys.get(keys.size() - 1) : null;
+            rangeCache.put(true, key, limit - 1, result, end);
+        }
+        return result;
     }
 
     // PRIVATE helper to handle 'prev' command
     // Finds key (or nearest smaller) and returns key + d predecessors in decreasing order
     private String handlePrev(String key, int d) {
-        List<String> keys = new ArrayList<>();
-        ArrayList<MultimediaItem> items = bst.get(bst.getRoot(), key);
-        Data current;
-        
-        if (items != null) {
-            keys.add(key); // Key exists → add first
-            current = bst.predecessor(bst.getRoot(), key);
-            while (current != null && keys.size() <= d) {
-                keys.add(current.getName()); // Add predecessors
-                current = bst.predecessor(bst.getRoot(), current.getName());
-            }
-        } else {
-            current = findFirstLessOrEqual(key); // Key doesn't exist → find first ≤ key
-            while (current != null && keys.size() <= d) {
-                keys.add(current.getName());
-                current = bst.predecessor(bst.getRoot(), current.getName());
-            }
-        }
-        
-        if (keys.isEmpty()) return "There are no keys smaller than or equal to " + key;
-        return String.join(" ", keys);
-    }
+        int limit = listLimit(d);
+        String cached = (rangeCache == null) ? null : rangeCache.get(false, key, limit - 1);
+        if (cached != null) return cached;
 
-    // Find first key ≥ given key (used when key not found)
-    private Data findFirstGreaterOrEqual(String key) {
-        BSTNode curr = bst.getRoot();
-        Data result = null;
-        while (curr != null && !curr.isLeaf()) {
-            int cmp = key.compareTo(curr.getData().getName());
-            if (cmp == 0) return curr.getData(); // Exact match
-            else if (cmp < 0) {
-                result = curr.getData(); // Potential successor
-                curr = curr.getLeftChild();
-            } else {
-                curr = curr.getRightChild();
-            }
+        List<String> keys = new ArrayList<>();
+        for (Data data : dict.descendingFrom(key, limit)) { // One seek, then d steps backward
+            keys.add(data.getName());
         }
-        return result;
-    }
 
-    // Find first key ≤ given key (used when key not found)
-    private Data findFirstLessOrEqual(String key) {
-        BSTNode curr = bst.getRoot();
-        Data result = null;
-        while (curr != null && !curr.isLeaf()) {
-            int cmp = key.compareTo(curr.getData().getName());
-            if (cmp == 0) return curr.getData(); // Exact match
-            else if (cmp < 0) {
-                curr = curr.getLeftChild();
-            } else {
-                result = curr.getData(); // Potential predecessor
-                curr = curr.getRightChild();
-            }
+        String result;
+        if (keys.isEmpty()) result = "There are no keys smaller than or equal to " + key;
+        else result = String.join(" ", keys);
+        if (rangeCache != null) {
+            // Read [last key listed, key], or back to the start if fewer than limit keys were left
+            String end = (!keys.isEmpty() && keys.size() == limit) ? keys.get(keys.size() - 1) : null;
+            rangeCache.put(false, key, limit - 1, result, end);
         }
         return result;
     }
@@ -0,0 +1,175 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/*
+ * Bounded LRU cache of 'next' and 'prev' results, as the joined strings Query
+ * prints. A result remembers the key range it was read from: 'next k d' reads
+ * [k, last key listed] and 'prev k d' reads [last key listed, k], or up to the
+ * end of the dictionary if it ran off it. A change to key can only alter results
+ * whose range holds key, so invalidate(key) drops exactly those.
+ *
+ * To find them without looking at every entry, results are also indexed by their
+ * query key. A 'next' range holding key lists fewer than maxSpan keys below it, so
+ * its query key is no further below key than the maxSpan-th key in the dictionary;
+ * invalidate asks the dictionary for that bound and checks only the entries in
+ * between ('prev' ranges likewise, above key). Results longer than MAX_SPAN keys
+ * are not cached, which keeps that walk short. All methods are synchronized.
+ */
+public class RangeQueryCache {
+
+    private static final int MAX_SPAN = 256; // Longest result (in keys) worth caching
+
+    private final int capacity;
+    private final OrderedDictionary dict;                     // Dictionary the results come from
+    private final LinkedHashMap<String, Entry> entries;       // Access order: least recently used first
+    private final TreeMap<String, ArrayList<Entry>> nextByKey = new TreeMap<String, ArrayList<Entry>>();
+    private final TreeMap<String, ArrayList<Entry>> prevByKey = new TreeMap<String, ArrayList<Entry>>();
+    private int maxSpan = 1;     // Most keys any cached result lists
+    private long hits;
+    private long misses;
+    private long evictions;      // Entries dropped to stay within capacity
+    private long invalidations;  // Entries dropped because a key in their range changed
+
+    public RangeQueryCache(int capacity, OrderedDictionary dict) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.dict = dict;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= RangeQueryCache.this.capacity) return false;
+                unindex(eldest.getValue());
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    // Cached result of 'next key d' (ascending) or 'prev key d', or null on a miss
+    public synchronized String get(boolean ascending, String key, int d) {
+        Entry e = entries.get(name(ascending, key, d));
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.result;
+    }
+
+    // Cache the result of 'next key d' or 'prev key d'; end is the last key it lists,
+    // or null if it reached the end of the dictionary before listing d + 1 keys
+    public synchronized void put(boolean ascending, String key, int d, String result, String end) {
+        if (d >= MAX_SPAN) return; // Also keeps d + 1 from overflowing
+        String name = name(ascending, key, d);
+        Entry old = entries.remove(name);
+        if (old != null) unindex(old);
+
+        Entry e = new Entry(name, ascending, key, end, result);
+        TreeMap<String, ArrayList<Entry>> byKey = ascending ? nextByKey : prevByKey;
+        byKey.computeIfAbsent(key, k -> new ArrayList<Entry>(1)).add(e);
+        entries.put(name, e);
+        maxSpan = Math.max(maxSpan, Math.max(d + 1, 1));
+    }
+
+    // Drop every result whose range holds key. Call it after the change, with dict
+    // holding the same keys it held before, apart from key itself.
+    public synchronized void invalidate(String key) {
+        if (entries.isEmpty()) return;
+
+        // 'next' results holding key start between the maxSpan-th key below key and key
+        ArrayList<Data> below = dict.descendingFrom(key, maxSpan + 1);
+        String from = (below.size() == maxSpan + 1) ? below.get(maxSpan).getName() : null;
+        NavigableMap<String, ArrayList<Entry>> nexts = (from == null)
+                ? nextByKey.headMap(key, true) : nextByKey.subMap(from, true, key, true);
+        ArrayList<Entry> stale = new ArrayList<Entry>();
+        for (ArrayList<Entry> list : nexts.values()) {
+            for (Entry e : list) {
+                if (e.end == null || key.compareTo(e.end) <= 0) stale.add(e);
+            }
+        }
+
+        // 'prev' results holding key start between key and the maxSpan-th key above it
+        ArrayList<Data> above = dict.ascendingFrom(key, maxSpan + 1);
+        String to = (above.size() == maxSpan + 1) ? above.get(maxSpan).getName() : null;
+        NavigableMap<String, ArrayList<Entry>> prevs = (to == null)
+                ? prevByKey.tailMap(key, true) : prevByKey.subMap(key, true, to, true);
+        for (ArrayList<Entry> list : prevs.values()) {
+            for (Entry e : list) {
+                if (e.end == null || e.end.compareTo(key) <= 0) stale.add(e);
+            }
+        }
+
+        for (Entry e : stale) {
+            entries.remove(e.name);
+            unindex(e);
+            invalidations++;
+        }
+    }
+
+    // Drop everything, e.g. after the whole dictionary was replaced
+    public synchronized void clear() {
+        invalidations += entries.size();
+        entries.clear();
+        nextByKey.clear();
+        prevByKey.clear();
+        maxSpan = 1;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    public synchronized long invalidations() {
+        return invalidations;
+    }
+
+    // One-line summary of the counters
+    public synchronized String stats() {
+        long lookups = hits + misses;
+        double hitRate = (lookups == 0) ? 0 : 100.0 * hits / lookups;
+        return String.format("Range cache: %d/%d entries, %d hits, %d misses (%.1f%% hits), %d evictions, %d invalidations",
+                entries.size(), capacity, hits, misses, hitRate, evictions, invalidations);
+    }
+
+    private void unindex(Entry e) {
+        TreeMap<String, ArrayList<Entry>> byKey = e.ascending ? nextByKey : prevByKey;
+        ArrayList<Entry> list = byKey.get(e.key);
+        list.remove(e);
+        if (list.isEmpty()) byKey.remove(e.key);
+    }
+
+    // Commands are split on whitespace, so keys hold no spaces and this name is unambiguous
+    private static String name(boolean ascending, String key, int d) {
+        return (ascending ? "next " : "prev ") + d + " " + key;
+    }
+
+    private static class Entry {
+        final String name;       // Key in entries
+        final boolean ascending; // 'next' rather than 'prev'
+        final String key;        // Key the command named
+        final String end;        // Last key listed, or null if the result ran off the dictionary
+        final String result;
+
+        Entry(String name, boolean ascending, String key, String end, String result) {
+            this.name = name;
+            this.ascending = ascending;
+            this.key = key;
+            this.end = end;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Red-black variant of BSTOrderedDictionary. Nodes and the shared leaf are the same
+ * BSTNode objects as in the plain tree, but every put and remove rebalances so the
+ * height stays below 2*log2(n+1) even when keys arrive in sorted order.
+ *
+ * Because BSTNode.LEAF is shared, leaves carry no parent pointer; delete fixup
+ * tracks the parent of the node carrying the extra black explicitly (instead of
+ * writing it into the leaf, as CLRS does with its nil sentinel).
+ *
+ * Rebalancing may move a different node to the top of the tree, so put and remove
+ * always work from the dictionary's own root; callers should re-read getRoot()
+ * after a mutation. The read-only methods are inherited unchanged.
+ */
+public class RedBlackOrderedDictionary extends BSTOrderedDictionary {
+
+    public RedBlackOrderedDictionary() {
+        super();
+    }
+
+    // Insert a new key-media pair and restore the red-black properties
+    public void put(BSTNode r, String key, String content, int type) {
+        if (root.isLeaf()) {
+            super.put(root, key, content, type); // First key: the (black) root is converted in place
+            return;
+        }
+
+        BSTNode parent = null;
+        BSTNode curr = root;
+        int cmp = 0;
+        SearchKey probe = new SearchKey(key);
+        while (!curr.isLeaf()) {
+            cmp = probe.compareTo(curr.getData());
+            if (cmp == 0) {
+                curr.getData().add(new MultimediaItem(content, type)); // Key exists, just add media
+                return;
+            }
+            parent = curr;
+            curr = (cmp < 0) ? curr.getLeftChild() : curr.getRightChild();
+        }
+
+        // Hang a red internal node with two (black) shared leaves where the leaf was
+        Data data = new Data(key);
+        data.add(new MultimediaItem(content, type));
+        BSTNode node = new BSTNode(parent, BSTNode.LEAF, BSTNode.LEAF, data);
+        if (index != null) index.put(key, data);
+        if (cmp < 0) parent.setLeftChild(node);
+        else parent.setRightChild(node);
+
+        node.setRed(true);
+        adjustSizes(node, 1);
+        numInternalNodes++;
+        insertFixup(node);
+    }
+
+    // Remove an entire node by key and restore the red-black properties
+    public void remove(BSTNode r, String key) throws DictionaryException {
+        BSTNode target = findNode(root, key);
+        if (target == null || target.isLeaf()) {
+            throw new DictionaryException("Key not found."); // Node does not exist
+        }
+        if (index != null) index.remove(key);
+
+        // Two internal children: move the successor's data up and unlink the successor instead
+        if (!target.getLeftChild().isLeaf() && !target.getRightChild().isLeaf()) {
+            BSTNode succ = smallestNode(target.getRightChild());
+            target.setData(succ.getData());
+            target = succ;
+        }
+
+        // target now has at least one leaf child; splice it out
+        BSTNode child = target.getLeftChild().isLeaf() ? target.getRightChild() : target.getLeftChild();
+        BSTNode parent = target.getParent();
+        transplant(target, child);
+        adjustSizes(parent, -1);
+        numInternalNodes--;
+
+        if (root.isLeaf()) {
+            root = new BSTNode(); // Last key gone: the dictionary gets its own empty root again
+        } else if (!target.isRed()) {
+            deleteFixup(child, parent);
+        }
+    }
+
+    // Returns the black height of the tree (leaves excluded), or -1 if any
+    // red-black, ordering, parent-pointer or subtree-size invariant is violated
+    public int blackHeight() {
+        if (root.getParent() != null || root.isRed()) return -1;
+        BSTNode leaf = BSTNode.LEAF;
+        if (leaf.getParent() != null || leaf.getData() != null || leaf.isRed() || leaf.getSize() != 0 || !leaf.isLeaf()) {
+            return -1; // Something wrote through the shared leaf
+        }
+        return checkSubtree(root, null, null);
+    }
+
+    // Returns true if the tree satisfies every red-black invariant and the
+    // height bound 2*log2(n+1) that follows from them
+    public boolean isValid() {
+        if (blackHeight() < 0) return false;
+        double bound = 2 * Math.log(numInternalNodes + 1) / Math.log(2);
+        return height() <= bound;
+    }
+
+    // Recursively validates a subtree whose keys must lie strictly between low and high
+    private int checkSubtree(BSTNode n, String low, String high) {
+        if (n.isLeaf()) {
+            return (n.isRed() || n.getSize() != 0) ? -1 : 0; // Leaves are black and empty
+        }
+
+        String key = n.getData().getName();
+        if (low != null && key.compareTo(low) <= 0) return -1;
+        if (high != null && key.compareTo(high) >= 0) return -1;
+
+        BSTNode left = n.getLeftChild();
+        BSTNode right = n.getRightChild();
+        if (left.isLeaf() ? left != BSTNode.LEAF : left.getParent() != n) return -1;
+        if (right.isLeaf() ? right != BSTNode.LEAF : right.getParent() != n) return -1;
+        if (n.isRed() && (left.isRed() || right.isRed())) return -1; // No red node has a red child
+        if (n.getSize() != 1 + left.getSize() + right.getSize()) return -1; // Subtree counts are current
+
+        int lh = checkSubtree(left, low, key);
+        int rh = checkSubtree(right, key, high);
+        if (lh < 0 || rh < 0 || lh != rh) return -1; // Equal black count on every path
+
+        return lh + (n.isRed() ? 0 : 1);
+    }
+
+    // Restore red-black properties after inserting red node z
+    private void insertFixup(BSTNode z) {
+        while (z.getParent() != null && z.getParent().isRed()) {
+            BSTNode p = z.getParent();
+            BSTNode g = p.getParent(); // Exists because the root is black
+
+            if (p == g.getLeftChild()) {
+                BSTNode uncle = g.getRightChild();
+                if (uncle.isRed()) {
+                    p.setRed(false);
+                    uncle.setRed(false);
+                    g.setRed(true);
+                    z = g;
+                } else {
+                    if (z == p.getRightChild()) {
+                        z = p;
+                        rotateLeft(z);
+                        p = z.getParent();
+                    }
+                    p.setRed(false);
+                    g.setRed(true);
+                    rotateRight(g);
+                }
+            } else {
+                BSTNode uncle = g.getLeftChild();
+                if (uncle.isRed()) {
+                    p.setRed(false);
+                    uncle.setRed(false);
+                    g.setRed(true);
+                    z = g;
+                } else {
+                    if (z == p.getLeftChild()) {
+                        z = p;
+                        rotateRight(z);
+                        p = z.getParent();
+                    }
+                    p.setRed(false);
+                    g.setRed(true);
+                    rotateLeft(g);
+                }
+            }
+        }
+        root.setRed(false);
+    }
+
+    // Restore red-black properties after removing a black node; x carries the extra black
+    private void deleteFixup(BSTNode x, BSTNode parent) {
+        while (x != root && !x.isRed()) {
+            if (x == parent.getLeftChild()) {
+                BSTNode sibling = parent.getRightChild();
+                if (sibling.isRed()) {
+                    sibling.setRed(false);
+                    parent.setRed(true);
+                    rotateLeft(parent);
+                    sibling = parent.getRightChild();
+                }
+                if (!sibling.getLeftChild().isRed() && !sibling.getRightChild().isRed()) {
+                    sibling.setRed(true);
+                    x = parent;
+                    parent = x.getParent();
+                } else {
+                    if (!sibling.getRightChild().isRed()) {
+                        sibling.getLeftChild().setRed(false);
+                        sibling.setRed(true);
+                        rotateRight(sibling);
+                        sibling = parent.getRightChild();
+                    }
+                    sibling.setRed(parent.isRed());
+                    parent.setRed(false);
+                    sibling.getRightChild().setRed(false);
+                    rotateLeft(parent);
+                    x = root;
+                }
+            } else {
+                BSTNode sibling = parent.getLeftChild();
+                if (sibling.isRed()) {
+                    sibling.setRed(false);
+                    parent.setRed(true);
+                    rotateRight(parent);
+                    sibling = parent.getLeftChild();
+                }
+                if (!sibling.getLeftChild().isRed() && !sibling.getRightChild().isRed()) {
+                    sibling.setRed(true);
+                    x = parent;
+                    parent = x.getParent();
+                } else {
+                    if (!sibling.getLeftChild().isRed()) {
+                        sibling.getRightChild().setRed(false);
+                        sibling.setRed(true);
+                        rotateLeft(sibling);
+                        sibling = parent.getLeftChild();
+                    }
+                    sibling.setRed(parent.isRed());
+                    parent.setRed(false);
+                    sibling.getLeftChild().setRed(false);
+                    rotateRight(parent);
+                    x = root;
+                }
+            }
+        }
+        if (x.isRed()) x.setRed(false); // Never write to the shared leaf
+    }
+
+    // Put newNode where oldNode was, updating the parent link or the root (leaves keep no parent)
+    private void transplant(BSTNode oldNode, BSTNode newNode) {
+        BSTNode parent = oldNode.getParent();
+        if (parent == null) {
+            root = newNode;
+        } else if (parent.getLeftChild() == oldNode) {
+            parent.setLeftChild(newNode);
+        } else {
+            parent.setRightChild(newNode);
+        }
+        if (!newNode.isLeaf()) newNode.setParent(parent);
+    }
+
+    // Rotate x down to the left; its right child takes its place
+    private void rotateLeft(BSTNode x) {
+        BSTNode y = x.getRightChild();
+        x.setRightChild(y.getLeftChild());
+        if (!y.getLeftChild().isLeaf()) y.getLeftChild().setParent(x);
+        transplant(x, y);
+        y.setLeftChild(x);
+        x.setParent(y);
+        updateSizesAfterRotation(x, y);
+    }
+
+    // Rotate x down to the right; its left child takes its place
+    private void rotateRight(BSTNode x) {
+        BSTNode y = x.getLeftChild();
+        x.setLeftChild(y.getRightChild());
+        if (!y.getRightChild().isLeaf()) y.getRightChild().setParent(x);
+        transplant(x, y);
+        y.setRightChild(x);
+        x.setParent(y);
+        updateSizesAfterRotation(x, y);
+    }
+
+    // After a rotation y covers the keys x used to cover, and x is recounted from its children
+    private void updateSizesAfterRotation(BSTNode x, BSTNode y) {
+        y.setSize(x.getSize());
+        x.setSize(1 + x.getLeftChild().getSize() + x.getRightChild().getSize());
+    }
+}
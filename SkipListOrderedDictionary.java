@@ -0,0 +1,128 @@
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Lock-free ordered dictionary backed by a ConcurrentSkipListMap from key to Data.
+ * Any number of threads may read and write at once; no operation takes a lock.
+ *
+ * A Data is never modified once it is in the map. Adding or deleting media builds
+ * a new Data and swaps it in with a compare-and-set (replace(key, old, new)),
+ * retrying if another writer changed that key first, so concurrent adds to one key
+ * are never lost and readers always see a complete media list.
+ *
+ * The skip list's own size() is O(n), so the number of keys is counted separately.
+ */
+public class SkipListOrderedDictionary implements OrderedDictionary {
+
+    private final ConcurrentSkipListMap<String, Data> map = new ConcurrentSkipListMap<String, Data>();
+    private final LongAdder keys = new LongAdder(); // Number of keys in map
+
+    public SkipListOrderedDictionary() {
+    }
+
+    public int size() {
+        return keys.intValue();
+    }
+
+    public ArrayList<MultimediaItem> get(String key) {
+        Data data = map.get(key);
+        return (data == null) ? null : data.getMedia();
+    }
+
+    public void put(String key, String content, int type) {
+        MultimediaItem item = new MultimediaItem(content, type);
+        while (true) {
+            Data old = map.get(key);
+            if (old == null) {
+                Data fresh = new Data(key);
+                fresh.add(item);
+                if (map.putIfAbsent(key, fresh) == null) {
+                    keys.increment();
+                    return;
+                }
+            } else {
+                Data updated = new Data(key);
+                for (MultimediaItem m : old.getMedia()) updated.add(m);
+                updated.add(item);
+                if (map.replace(key, old, updated)) return;
+            }
+            // Another writer got to key first; try again with its version
+        }
+    }
+
+    public void remove(String key) throws DictionaryException {
+        if (map.remove(key) == null) throw new DictionaryException("Key not found.");
+        keys.decrement();
+    }
+
+    // Remove the media of the given type from key, and key itself if nothing remains
+    public void remove(String key, int type) throws DictionaryException {
+        while (true) {
+            Data old = map.get(key);
+            if (old == null) throw new DictionaryException("Key not found.");
+
+            Data kept = new Data(key);
+            for (MultimediaItem m : old.getMedia()) {
+                if (m.getType() != type) kept.add(m);
+            }
+            if (kept.getMedia().isEmpty()) {
+                if (map.remove(key, old)) {
+                    keys.decrement();
+                    return;
+                }
+            } else if (map.replace(key, old, kept)) {
+                return;
+            }
+        }
+    }
+
+    public Data successor(String key) {
+        Map.Entry<String, Data> e = map.higherEntry(key);
+        return (e == null) ? null : e.getValue();
+    }
+
+    public Data predecessor(String key) {
+        Map.Entry<String, Data> e = map.lowerEntry(key);
+        return (e == null) ? null : e.getValue();
+    }
+
+    public Data smallest() {
+        Map.Entry<String, Data> e = map.firstEntry();
+        return (e == null) ? null : e.getValue();
+    }
+
+    public Data largest() {
+        Map.Entry<String, Data> e = map.lastEntry();
+        return (e == null) ? null : e.getValue();
+    }
+
+    public ArrayList<Data> ascendingFrom(String key, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        if (count <= 0) return result;
+        for (Data data : map.tailMap(key, true).values()) {
+            result.add(data);
+            if (result.size() == count) break;
+        }
+        return result;
+    }
+
+    public ArrayList<Data> descendingFrom(String key, int count) {
+        ArrayList<Data> result = new ArrayList<Data>();
+        if (count <= 0) return result;
+        for (Data data : map.headMap(key, true).descendingMap().values()) {
+            result.add(data);
+            if (result.size() == count) break;
+        }
+        return result;
+    }
+
+    // Not atomic: concurrent readers may see a mix of old and new contents while it runs
+    public void buildFromSorted(ArrayList<Data> sorted) {
+        map.clear();
+        keys.reset();
+        for (Data data : sorted) map.put(data.getName(), data);
+        keys.add(sorted.size());
+    }
+}
@@ -1,25 +1,37 @@
 import java.io.*;
+import java.util.concurrent.CountDownLatch;
 
 import javax.sound.sampled.AudioInputStream; 
 import javax.sound.sampled.AudioSystem; 
 import javax.sound.sampled.Clip; 
+import javax.sound.sampled.LineEvent; 
 import javax.sound.sampled.LineUnavailableException; 
 import javax.sound.sampled.UnsupportedAudioFileException; 
 
 public class SoundPlayer { 
 
+	// Files larger than this are streamed through a SourceDataLine instead of loaded into a Clip 
+	public static final long STREAM_BYTES = 4L << 20; 
+
+	private MediaCache cache; // Decoded sounds shared between players, or null 
+
+	public SoundPlayer() { 
+	} 
+
+	// A player that takes decoded sounds from cache instead of decoding each time 
+	public SoundPlayer(MediaCache newCache) { 
+		cache = newCache; 
+	} 
+
 	// constructor to initialize streams and clip 
 	public void play(String fileName) throws MultimediaException { 
-		// create AudioInputStream object 
+		if (streams(fileName)) { 
+			playStreamed(fileName); 
+			return; 
+		} 
+		// open the clip from the file or the cache 
 		try {
-			AudioInputStream audioInputStream = 
-				AudioSystem.getAudioInputStream(new File(fileName).getAbsoluteFile()); 
-		
-			// create clip reference 
-			Clip clip = AudioSystem.getClip(); 
-		
-			// open audioInputStream to the clip 
-			clip.open(audioInputStream); 
+			Clip clip = openClip(fileName); 
 		
 			clip.start(); 
 			System.out.print("Press RET to continue");
@@ -34,6 +46,91 @@ public class SoundPlayer {
 	} 
 
 
+	// Play the whole file without waiting for the keyboard. Returns when the clip 
+	// has finished; if the calling thread is interrupted the clip is stopped early 
+	// and InterruptedException is thrown. 
+	public void playToEnd(String fileName) throws MultimediaException, InterruptedException { 
+		if (streams(fileName)) { 
+			new AudioStreamer(new LineAudioSink()).play(fileName); 
+			return; 
+		} 
+		Clip clip; 
+		try {
+			clip = openClip(fileName); 
+		}
+		catch (Exception e) {
+			throw new MultimediaException("Error processing input file "+fileName);
+		}
+
+		// The clip plays on its own thread and reports STOP when it reaches the end 
+		CountDownLatch finished = new CountDownLatch(1); 
+		clip.addLineListener(event -> { 
+			if (event.getType() == LineEvent.Type.STOP) finished.countDown(); 
+		}); 
+		try {
+			clip.start(); 
+			finished.await(); 
+		}
+		finally {
+			clip.stop(); 
+			clip.close(); 
+		}
+	} 
+
+
+	// True if fileName is too large to decode into a Clip (or the media cache) up front 
+	private static boolean streams(String fileName) { 
+		return new File(fileName).getAbsoluteFile().length() > STREAM_BYTES; 
+	} 
+
+
+	// Stream a large file on another thread until it ends or RET is pressed 
+	private void playStreamed(String fileName) throws MultimediaException { 
+		MultimediaException[] failure = new MultimediaException[1]; 
+		Thread streamer = new Thread(() -> { 
+			try { 
+				new AudioStreamer(new LineAudioSink()).play(fileName); 
+			} 
+			catch (MultimediaException e) { 
+				failure[0] = e; 
+			} 
+			catch (InterruptedException e) { 
+				// Stopped by RET 
+			} 
+		}); 
+		streamer.start(); 
+		try { 
+			System.out.print("Press RET to continue"); 
+			BufferedReader keyboard = new BufferedReader 
+		                   (new InputStreamReader(System.in)); 
+			keyboard.readLine(); 
+			streamer.interrupt(); 
+			streamer.join(); 
+		} 
+		catch (Exception e) { 
+			streamer.interrupt(); 
+			throw new MultimediaException("Error processing input file "+fileName); 
+		} 
+		if (failure[0] != null) throw failure[0]; 
+	} 
+
+
+	// Open a clip on the decoded file, decoding it only if the cache does not have it 
+	private Clip openClip(String fileName) throws Exception { 
+		if (cache != null) { 
+			MediaCache.DecodedAudio audio = cache.sound(fileName); 
+			Clip clip = AudioSystem.getClip(); 
+			clip.open(audio.getFormat(), audio.getData(), 0, audio.getData().length); 
+			return clip; 
+		} 
+		AudioInputStream audioInputStream = 
+			AudioSystem.getAudioInputStream(new File(fileName).getAbsoluteFile()); 
+		Clip clip = AudioSystem.getClip(); 
+		clip.open(audioInputStream); 
+		return clip; 
+	} 
+
+
 	// Method to stop the audio 
 	public void stop(Clip clip) throws UnsupportedAudioFileException, 
 	IOException, LineUnavailableException { 
@@ -1,5 +1,9 @@
 import java.io.*;
 import java.util.ArrayList;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
 
 public class TestDict {
 
@@ -311,6 +315,815 @@ public class TestDict {
 	catch (IOException e) {
 	    System.out.println("Cannot open file: large.txt");
 	}
+
+	if (alltests || test == 17)
+		// Sorted inserts into the red-black dictionary must keep it balanced
+		try {
+			passed = true;
+			RedBlackOrderedDictionary rb = new RedBlackOrderedDictionary();
+			BufferedReader in = new BufferedReader(new FileReader("large.txt"));
+			ArrayList<String> words = new ArrayList<String>();
+			String word = in.readLine();
+			while (word != null) {
+				rb.put(rb.getRoot(),word,in.readLine(),TEXT);
+				words.add(word);
+				word = in.readLine();
+			}
+			in.close();
+			if (!rb.isValid()) passed = false;
+
+			for (int i = 0; i < words.size(); i += 3) rb.remove(rb.getRoot(),words.get(i));
+			if (!rb.isValid()) passed = false;
+			if (rb.get(rb.getRoot(),words.get(0)) != null) passed = false;
+			if (rb.get(rb.getRoot(),words.get(1)) == null) passed = false;
+			data = rb.successor(rb.getRoot(),"land");
+			if (data.getName().compareTo("langate") != 0) passed = false;
+			print(passed,16);
+		}
+		catch (Exception e) {
+			print(false,16);
+		}
+
+	if (alltests || test == 18)
+		// Test rank, select and countRange in both tree variants
+		try {
+			passed = true;
+			BSTOrderedDictionary[] dicts = {new BSTOrderedDictionary(), new RedBlackOrderedDictionary()};
+			for (BSTOrderedDictionary d : dicts) {
+				for (int i = 0; i < 5; ++i) d.put(d.getRoot(),keys[i],content[i],type[i]);
+				d.remove(d.getRoot(),keys[1]);
+				// Remaining keys in order: class, computer, four, homework
+				if (d.getRoot().getSize() != 4) passed = false;
+				if (d.rank(d.getRoot(),"class") != 0) passed = false;
+				if (d.rank(d.getRoot(),"four") != 2) passed = false;
+				if (d.rank(d.getRoot(),"zebra") != 4) passed = false;
+				if (!d.select(d.getRoot(),1).getName().equals("computer")) passed = false;
+				if (d.select(d.getRoot(),4) != null) passed = false;
+				if (d.countRange(d.getRoot(),"computer","homework") != 3) passed = false;
+				if (d.countRange(d.getRoot(),"d","g") != 1) passed = false;
+				if (d.countRange(d.getRoot(),"class","four") != 3) passed = false;
+				if (d.countRange(d.getRoot(),"a","zebra") != 4) passed = false;
+				if (d.countRange(d.getRoot(),"homeworks","zebra") != 0) passed = false;
+			}
+			print(passed,17);
+		}
+		catch (Exception e) {
+			print(false,17);
+		}
+
+	if (alltests || test == 19)
+		// Bulk load unsorted pairs with a duplicate key, then keep using the tree
+		try {
+			passed = true;
+			RedBlackOrderedDictionary rb = new RedBlackOrderedDictionary();
+			ArrayList<String> bulkKeys = new ArrayList<String>();
+			ArrayList<MultimediaItem> bulkItems = new ArrayList<MultimediaItem>();
+			for (int i = 0; i < content.length; ++i) {
+				bulkKeys.add(keys[(i * 3) % 5]);
+				bulkItems.add(new MultimediaItem(content[i],type[i]));
+			}
+			rb.bulkLoad(bulkKeys,bulkItems);
+			if (rb.getNumInternalNodes() != 5 || !rb.isValid()) passed = false;
+			list = rb.get(rb.getRoot(),keys[0]);
+			if (list.size() != 2 || !list.get(0).getContent().equals(content[0])) passed = false;
+			if (!rb.smallest(rb.getRoot()).getName().equals("class")) passed = false;
+
+			rb.put(rb.getRoot(),"zebra","A striped animal.",TEXT);
+			rb.remove(rb.getRoot(),keys[1]);
+			if (rb.getNumInternalNodes() != 5 || !rb.isValid()) passed = false;
+			print(passed,18);
+		}
+		catch (Exception e) {
+			print(false,18);
+		}
+
+	if (alltests || test == 20)
+		// A pinned version of the persistent dictionary is unaffected by later writes
+		try {
+			passed = true;
+			PersistentOrderedDictionary pd = new PersistentOrderedDictionary();
+			for (int i = 0; i < 1000; ++i) pd.put(pd.getRoot(),String.format("key%04d",i),"text "+i,TEXT);
+			BSTNode pinned = pd.getRoot();
+			for (int i = 0; i < 1000; i += 2) pd.remove(pd.getRoot(),String.format("key%04d",i));
+			pd.put(pd.getRoot(),"key0001","more text",TEXT);
+			if (pd.getNumInternalNodes() != 500 || !pd.isValid()) passed = false;
+			if (pinned.getSize() != 1000 || pd.get(pinned,"key0001").size() != 1) passed = false;
+			if (pd.get(pd.getRoot(),"key0001").size() != 2 || pd.get(pd.getRoot(),"key0000") != null) passed = false;
+
+			PersistentOrderedDictionary.Scan scan = pd.scan(pinned,"key0500");
+			int seen = 0;
+			while (scan.hasNext()) {
+				if (!scan.next().getName().equals(String.format("key%04d",500 + seen))) passed = false;
+				++seen;
+			}
+			if (seen != 500) passed = false;
+
+			// Lists handed out are copies, so changing one leaves every version alone
+			pd.get(pinned,"key0002").clear();
+			pd.successor(pinned,"key0001").getMedia().clear();
+			if (pd.get(pinned,"key0002").size() != 1) passed = false;
+			PersistentOrderedDictionary.Scan down = pd.scanDescending(pinned,"key0499");
+			for (int i = 499; i >= 0; i--) {
+				if (!down.hasNext() || !down.next().getName().equals(String.format("key%04d",i))) passed = false;
+			}
+			if (down.hasNext()) passed = false;
+
+			// Through the OrderedDictionary interface, as Query uses it
+			ArrayList<Data> after = pd.ascendingFrom("key0500",3);
+			ArrayList<Data> before = pd.descendingFrom("key0500",3);
+			if (after.size() != 3 || !after.get(0).getName().equals("key0501") || !after.get(2).getName().equals("key0505")) passed = false;
+			if (before.size() != 3 || !before.get(0).getName().equals("key0499") || !before.get(2).getName().equals("key0495")) passed = false;
+			Query q = new Query("small.txt",1,null,"persistent");
+			if (!q.processCommand("next c 3").equals("computer course cube cute")) passed = false;
+			if (!q.processCommand("prev d 1").equals("cute cube")) passed = false;
+			q.close();
+			print(passed,19);
+		}
+		catch (Exception e) {
+			print(false,19);
+		}
+
+	if (alltests || test == 21)
+		// The other backends behave like the tree through the OrderedDictionary interface
+		try {
+			passed = true;
+			OrderedDictionary[] backends = {new RedBlackOrderedDictionary(), new SkipListOrderedDictionary(), new BPlusTreeOrderedDictionary(),
+				new ArrayOrderedDictionary(), new OffHeapOrderedDictionary(), new CompactOrderedDictionary(), new PersistentOrderedDictionary()};
+			for (OrderedDictionary od : backends) {
+				for (int i = 0; i < content.length; ++i) od.put(keys[i % 5],content[i],type[i]);
+				od.remove(keys[2],TEXT);
+				od.remove(keys[4]);
+				if (od.size() != 4 || od.get(keys[4]) != null || od.get(keys[2]).size() != 1) passed = false;
+				if (!od.smallest().getName().equals("class") || !od.largest().getName().equals("homework")) passed = false;
+				if (!od.successor(keys[1]).getName().equals(od.ascendingFrom(keys[1],2).get(1).getName())) passed = false;
+				if (!od.predecessor(keys[1]).getName().equals(od.descendingFrom(keys[1],2).get(1).getName())) passed = false;
+				try {
+					od.remove(keys[4]);
+					passed = false;
+				}
+				catch (DictionaryException e) {
+				}
+			}
+			print(passed,20);
+		}
+		catch (Exception e) {
+			print(false,20);
+		}
+
+	if (alltests || test == 22)
+		// Leaves are the shared BSTNode.LEAF, but an emptied dictionary still has a root of its own
+		try {
+			passed = true;
+			BSTOrderedDictionary[] trees = {new BSTOrderedDictionary(), new RedBlackOrderedDictionary()};
+			for (BSTOrderedDictionary t : trees) {
+				BSTNode emptyRoot = t.getRoot();
+				if (!emptyRoot.isLeaf() || emptyRoot == BSTNode.LEAF) passed = false;
+				for (int i = 0; i < keys.length; ++i) t.put(t.getRoot(),keys[i],content[i],type[i]);
+				BSTNode smallestNode = t.getRoot();
+				while (!smallestNode.getLeftChild().isLeaf()) smallestNode = smallestNode.getLeftChild();
+				if (smallestNode.getLeftChild() != BSTNode.LEAF || !smallestNode.getLeftChild().isLeaf()) passed = false;
+
+				for (int i = 0; i < keys.length; ++i) t.remove(t.getRoot(),keys[i]);
+				if (!t.getRoot().isLeaf() || t.getRoot() == BSTNode.LEAF || t.getNumInternalNodes() != 0) passed = false;
+				t.put(t.getRoot(),keys[0],content[0],type[0]);
+				if (t.get(t.getRoot(),keys[0]) == null) passed = false;
+			}
+			if (BSTNode.LEAF.getParent() != null || BSTNode.LEAF.getSize() != 0 || !BSTNode.LEAF.isLeaf()) passed = false;
+			print(passed,21);
+		}
+		catch (Exception e) {
+			print(false,21);
+		}
+
+	if (alltests || test == 23)
+		// Off-heap storage returns exactly what the on-heap tree does for large.txt
+		try {
+			passed = true;
+			RedBlackOrderedDictionary onHeap = new RedBlackOrderedDictionary();
+			OffHeapOrderedDictionary offHeap = new OffHeapOrderedDictionary();
+			new DictionaryLoader(1).load("large.txt",onHeap);
+			new DictionaryLoader(1).load("large.txt",offHeap);
+			offHeap.put("zzz\u4e2d\u6587","Non-Latin-1 key",TEXT);
+			onHeap.put("zzz\u4e2d\u6587","Non-Latin-1 key",TEXT);
+
+			ArrayList<Data> expected = onHeap.ascendingFrom("",Integer.MAX_VALUE);
+			ArrayList<Data> actual = offHeap.ascendingFrom("",Integer.MAX_VALUE);
+			if (expected.size() != actual.size()) passed = false;
+			for (int i = 0; passed && i < expected.size(); ++i) {
+				Data e = expected.get(i);
+				Data a = actual.get(i);
+				if (!e.getName().equals(a.getName()) || e.getMedia().size() != a.getMedia().size()) passed = false;
+				else if (!e.getMedia().get(0).getContent().equals(a.getMedia().get(0).getContent())) passed = false;
+			}
+
+			offHeap.put("practic","practic.gif",IMAGE);
+			offHeap.remove("practic",TEXT);
+			list = offHeap.get("practic");
+			if (list.size() != 1 || list.get(0).getType() != IMAGE || offHeap.garbageBytes() == 0) passed = false;
+			if (!offHeap.isValid()) passed = false;
+			print(passed,22);
+		}
+		catch (Exception e) {
+			print(false,22);
+		}
+
+	if (alltests || test == 24)
+		// Front-coded keys decode and search like the sorted list they came from
+		try {
+			passed = true;
+			RedBlackOrderedDictionary tree = new RedBlackOrderedDictionary();
+			new DictionaryLoader(1).load("large.txt",tree);
+			tree.put("zzz\u4e2d\u6587","Non-Latin-1 key",TEXT);
+			ArrayList<Data> all = tree.ascendingFrom("",Integer.MAX_VALUE);
+			ArrayList<String> names = new ArrayList<String>();
+			for (Data d : all) names.add(d.getName());
+
+			FrontCodedKeys fc = FrontCodedKeys.of(names);
+			if (fc.size() != names.size()) passed = false;
+			for (int i = 0; passed && i < names.size(); ++i) {
+				if (!fc.key(i).equals(names.get(i)) || fc.indexOf(names.get(i)) != i) passed = false;
+				if (fc.ceiling(names.get(i) + "\0") != i + 1 || fc.floor(names.get(i) + "\0") != i) passed = false;
+			}
+			if (fc.indexOf("") != -1 || fc.floor("") != -1 || fc.ceiling("\uffff") != names.size()) passed = false;
+
+			// Keys put one at a time go through the delta and several merges into the base
+			CompactOrderedDictionary compact = new CompactOrderedDictionary();
+			for (int i = all.size() - 1; i >= 0; --i) compact.put(all.get(i).getName(),all.get(i).getMedia().get(0).getContent(),TEXT);
+			if (compact.baseSize() == 0 || compact.size() != all.size()) passed = false;
+			compact.remove("practic");
+			compact.remove(all.get(0).getName());
+			tree.remove(tree.getRoot(),"practic");
+			tree.remove(tree.getRoot(),all.get(0).getName());
+			ArrayList<Data> expected = tree.ascendingFrom("",Integer.MAX_VALUE);
+			ArrayList<Data> actual = compact.ascendingFrom("",Integer.MAX_VALUE);
+			if (expected.size() != actual.size() || compact.size() != expected.size()) passed = false;
+			for (int i = 0; passed && i < expected.size(); ++i) {
+				if (!expected.get(i).getName().equals(actual.get(i).getName())) passed = false;
+			}
+			if (!compact.smallest().getName().equals(tree.smallest().getName())) passed = false;
+			if (!compact.largest().getName().equals("zzz\u4e2d\u6587")) passed = false;
+			if (!compact.successor("practic").getName().equals(tree.successor(tree.getRoot(),"practic").getName())) passed = false;
+			compact.put("practic","practic.gif",IMAGE);
+			if (compact.get("practic").size() != 1 || compact.get("practic").get(0).getType() != IMAGE) passed = false;
+
+			// Removes alone fold the base once an eighth of it is tombstones
+			int baseKeys = compact.baseSize();
+			int deltaKeys = compact.size() - baseKeys + 2; // At most two base keys are tombstones already
+			int removed = 0;
+			for (int i = 1; compact.baseSize() == baseKeys && i < all.size(); ++i, ++removed) compact.remove(all.get(i).getName());
+			if (removed > baseKeys / 8 + deltaKeys || compact.baseSize() != compact.size()) passed = false;
+			print(passed,23);
+		}
+		catch (Exception e) {
+			print(false,23);
+		}
+
+	if (alltests || test == 25)
+		// The packed-prefix comparison orders keys exactly as String.compareTo does
+		try {
+			passed = true;
+			String[] tricky = {"", "a", "ab", "ab\0", "ab\0c", "abc", "abcd", "abcd\0", "abcde", "abcdf",
+				"b", "\u00ff", "\u4e2d", "\u4e2d\u6587", "\uffff"};
+			for (String a : tricky) {
+				for (String b : tricky) {
+					if (Integer.signum(new SearchKey(a).compareTo(new Data(b))) != Integer.signum(a.compareTo(b))) passed = false;
+				}
+			}
+			RedBlackOrderedDictionary t = new RedBlackOrderedDictionary();
+			for (String k : tricky) t.put(k,"x",TEXT);
+			for (int i = 0; i < tricky.length; ++i) {
+				if (t.get(tricky[i]) == null) passed = false;
+				if (i > 0 && !t.predecessor(tricky[i]).getName().equals(tricky[i - 1])) passed = false;
+			}
+			if (!t.isValid()) passed = false;
+			print(passed,24);
+		}
+		catch (Exception e) {
+			print(false,24);
+		}
+
+	if (alltests || test == 26)
+		// The hash index answers get exactly as the tree does through puts, removes and rebuilds
+		try {
+			passed = true;
+			BSTOrderedDictionary[] trees = {new BSTOrderedDictionary(), new RedBlackOrderedDictionary()};
+			for (BSTOrderedDictionary t : trees) {
+				t.setHashIndex(true);
+				for (int i = 0; i < content.length; ++i) t.put(keys[i % 5],content[i],type[i]);
+				t.remove(keys[2],TEXT);
+				t.remove(keys[4]);
+				t.remove(keys[0]);
+				t.put(keys[0],"again",TEXT);
+				for (int i = 0; i < keys.length; ++i) {
+					BSTNode found = t.findNode(t.getRoot(),keys[i]);
+					if (t.get(keys[i]) != ((found == null) ? null : found.getData().getMedia())) passed = false;
+				}
+				if (t.get(keys[4]) != null || t.get(keys[0]).size() != 1 || t.get("nothing") != null) passed = false;
+
+				t.buildFromSorted(t.ascendingFrom("",t.size()));
+				t.setHashIndex(false);
+				t.setHashIndex(true);
+				if (t.get(keys[1]) == null || t.get(keys[4]) != null || t.predecessor(keys[1]) == null) passed = false;
+			}
+			print(passed,25);
+		}
+		catch (Exception e) {
+			print(false,25);
+		}
+
+	if (alltests || test == 27)
+		// Cached next/prev results are dropped only when a key inside their range changes
+		try {
+			passed = true;
+			RedBlackOrderedDictionary t = new RedBlackOrderedDictionary();
+			String[] words = {"apple", "cube", "cute", "dancing", "exam", "tree"};
+			for (String w : words) t.put(w,"x",TEXT);
+			RangeQueryCache cache = new RangeQueryCache(3,t);
+			cache.put(true,"cube",2,"cube cute dancing","dancing");
+			cache.put(false,"exam",1,"exam dancing","dancing");
+			cache.put(true,"tree",5,"tree",null);
+			if (!"cube cute dancing".equals(cache.get(true,"cube",2)) || cache.get(true,"cube",3) != null) passed = false;
+			if (cache.get(false,"cube",2) != null || cache.hits() != 1 || cache.misses() != 2) passed = false;
+
+			t.put("bee","x",TEXT);
+			cache.invalidate("bee");            // Outside every range
+			t.put("zebra","x",TEXT);
+			cache.invalidate("zebra");          // Only the open-ended range
+			if (cache.size() != 2 || cache.get(true,"tree",5) != null) passed = false;
+			t.remove("dancing");
+			cache.invalidate("dancing");        // The last key of one range and the first of another
+			if (cache.size() != 0 || cache.invalidations() != 3) passed = false;
+
+			for (int i = 0; i < 4; ++i) cache.put(true,"k" + i,1,"r" + i,"k" + i + "z");
+			cache.get(true,"k1",1);             // k1 is now more recent than k2 and k3
+			cache.put(true,"k4",1,"r4","k4z");
+			if (cache.size() != 3 || cache.evictions() != 2 || cache.get(true,"k1",1) == null || cache.get(true,"k2",1) != null) passed = false;
+			t.put("k1a","x",TEXT);
+			cache.invalidate("k1a");
+			if (cache.get(true,"k1",1) != null || cache.get(true,"k3",1) == null) passed = false;
+			print(passed,26);
+		}
+		catch (Exception e) {
+			print(false,26);
+		}
+
+	if (alltests || test == 28)
+		// Playback is handed to the scheduler and can be cancelled; text is not its business
+		try {
+			passed = true;
+			PlaybackScheduler player = new PlaybackScheduler(1,1);
+			PlaybackScheduler.Playback sound = player.submit(new MultimediaItem("fireworks.wav",AUDIO));
+			sound.cancel();                     // Whether it was playing or had already failed
+			if (!sound.await(5000) || !sound.isDone() || player.cancel(sound.getId())) passed = false;
+			try {
+				player.submit(new MultimediaItem(content[0],TEXT));
+				passed = false;
+			}
+			catch (MultimediaException e) {
+			}
+			player.shutdown();
+			print(passed,27);
+		}
+		catch (Exception e) {
+			print(false,27);
+		}
+
+	if (alltests || test == 29)
+		// Decoded sounds are kept by weight and the least recently used one goes first
+		try {
+			passed = true;
+			MediaCache cache = new MediaCache(250000);
+			MediaCache.DecodedAudio loon = cache.sound("loon.wav");
+			cache.sound("roar.wav");
+			if (cache.sound("loon.wav") != loon || cache.hits() != 1 || cache.misses() != 2) passed = false;
+			cache.sound("spring.wav");          // Three do not fit: roar.wav was used least recently
+			if (cache.evictions() != 1 || cache.size() != 2 || cache.bytes() > 250000) passed = false;
+			if (cache.sound("loon.wav") != loon || cache.hits() != 2) passed = false;
+			cache.sound("roar.wav");
+			if (cache.misses() != 4) passed = false;
+			try {
+				cache.sound("nothing.wav");
+				passed = false;
+			}
+			catch (MultimediaException e) {
+			}
+			print(passed,28);
+		}
+		catch (Exception e) {
+			print(false,28);
+		}
+
+	if (alltests || test == 30)
+		// Media files are probed without playing them and broken ones are flagged on their items
+		try {
+			passed = true;
+			File bad = File.createTempFile("testdict", ".gif");
+			bad.deleteOnExit();
+			FileWriter w = new FileWriter(bad);
+			w.write("not a picture");
+			w.close();
+
+			RedBlackOrderedDictionary t = new RedBlackOrderedDictionary();
+			t.put("fireworks","fireworks.wav",AUDIO);
+			t.put("fireworks","fireworks.gif",IMAGE);
+			t.put("nap","nap.gif",IMAGE);
+			t.put("bad",bad.getPath(),IMAGE);
+			t.put("tree",content[0],TEXT);
+			MediaValidator.Report report = new MediaValidator(2).validate(t);
+			if (report.files() != 4 || report.broken() != 2) passed = false;
+
+			MultimediaItem sound = t.get("fireworks").get(0);
+			MultimediaItem picture = t.get("fireworks").get(1);
+			if (!sound.isPlayable() || sound.getInfo().getDurationMillis() <= 0) passed = false;
+			if (!picture.isPlayable() || picture.getInfo().getWidth() <= 0 || picture.getInfo().getHeight() <= 0) passed = false;
+			if (t.get("nap").get(0).isPlayable() || t.get("bad").get(0).isPlayable()) passed = false;
+			if (t.get("tree").get(0).getInfo() != null || !t.get("tree").get(0).isPlayable()) passed = false;
+			if (report.info("nap.gif").isValid() || report.info("fireworks.gif") != picture.getInfo()) passed = false;
+			print(passed,29);
+		}
+		catch (Exception e) {
+			print(false,29);
+		}
+
+	if (alltests || test == 31)
+		// A sound streams through the sink in ring-sized pieces and stops when interrupted
+		try {
+			passed = true;
+			File wav = File.createTempFile("testdict", ".wav");
+			wav.deleteOnExit();
+			AudioFormat format = new AudioFormat(8000, 16, 1, true, false);
+			byte[] samples = new byte[20000];
+			AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(samples), format, samples.length / 2),
+				AudioFileFormat.Type.WAVE, wav);
+
+			NullAudioSink sink = new NullAudioSink();
+			if (new AudioStreamer(sink, 4096).play(wav.getPath()) != samples.length) passed = false;
+			if (sink.getBytes() != samples.length || sink.getBufferBytes() != 4096 || sink.isOpen()) passed = false;
+			if (!sink.getFormat().matches(format) || sink.getFirstWriteNanos() == 0) passed = false;
+
+			Thread.currentThread().interrupt();
+			try {
+				new AudioStreamer(sink, 4096).play(wav.getPath());
+				passed = false;
+			}
+			catch (InterruptedException e) {
+				if (sink.getBytes() != 0 || sink.isOpen()) passed = false; // Stopped before the first chunk
+			}
+			try {
+				new AudioStreamer(sink).play("nothing.wav");
+				passed = false;
+			}
+			catch (MultimediaException e) {
+			}
+			print(passed,30);
+		}
+		catch (Exception e) {
+			print(false,30);
+		}
+
+	if (alltests || test == 32)
+		// A batch gives the same output in order whether or not its reads run in parallel
+		try {
+			passed = true;
+			String script = "get course\nnext c 3\nadd zebra Stripes 1\nget zebra\nprev zz 2\nsize\n"
+				+ "remove zebra\nget zebra\nsize\nfirst\nend\nget course\n";
+			String[] outputs = new String[2];
+			long[] counts = new long[2];
+			for (int run = 0; run < 2; run++) {
+				Query q = new Query("small.txt",2);
+				StringWriter out = new StringWriter();
+				counts[run] = q.runBatch(new BufferedReader(new java.io.StringReader(script)),out,run == 1);
+				q.close();
+				outputs[run] = out.toString();
+			}
+			if (counts[0] != 10 || counts[1] != 10 || !outputs[0].equals(outputs[1])) passed = false;
+			String[] lines = outputs[1].split(System.lineSeparator());
+			if (!lines[0].startsWith("A series of talks") || !lines[2].equals("Stripes")) passed = false;
+			if (!outputs[1].contains("The word zebra is not in the ordered dictionary.")) passed = false;
+			print(passed,31);
+		}
+		catch (Exception e) {
+			print(false,31);
+		}
+
+	if (alltests || test == 33)
+		// A snapshot loads back to the same dictionary; damaged or cut-short files are refused
+		try {
+			passed = true;
+			RedBlackOrderedDictionary t = new RedBlackOrderedDictionary();
+			for (int i = 0; i < 9; i++) t.put(keys[i % 5],content[i],type[i]);
+			File snap = File.createTempFile("testdict", ".snap");
+			snap.deleteOnExit();
+			DictionarySnapshot.save(t,snap.getPath(),7);
+
+			RedBlackOrderedDictionary loaded = new RedBlackOrderedDictionary();
+			if (DictionarySnapshot.load(snap.getPath(),loaded) != 7 || !sameContents(t,loaded)) passed = false;
+			if (!DictionarySnapshot.isSnapshot(snap.getPath()) || new File(snap.getPath() + ".tmp").exists()) passed = false;
+
+			long length = snap.length();
+			long[] damaged = {12, 17, length - 3};  // Key count, generation, last content byte
+			for (long offset : damaged) {
+				RandomAccessFile raf = new RandomAccessFile(snap,"rw");
+				raf.seek(offset);
+				int b = raf.read();
+				raf.seek(offset);
+				raf.write(b ^ 1);
+				raf.close();
+				try {
+					DictionarySnapshot.load(snap.getPath(),new RedBlackOrderedDictionary());
+					passed = false;
+				}
+				catch (IOException e) {
+				}
+				DictionarySnapshot.save(t,snap.getPath(),7);
+			}
+
+			RandomAccessFile raf = new RandomAccessFile(snap,"rw");
+			raf.setLength(length - 10);
+			raf.close();
+			try {
+				DictionarySnapshot.load(snap.getPath(),new RedBlackOrderedDictionary());
+				passed = false;
+			}
+			catch (IOException e) {
+			}
+
+			// A version 3 file, which stored each item type in one byte, still loads
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream v3 = new DataOutputStream(bytes);
+			v3.writeInt(1);             // Key count
+			v3.writeLong(7);            // Generation
+			v3.writeInt(4);
+			v3.write("loon".getBytes("UTF-8"));
+			v3.writeInt(1);             // Items
+			v3.writeByte(AUDIO);
+			v3.writeInt(8);
+			v3.write("loon.wav".getBytes("UTF-8"));
+			byte[] covered = bytes.toByteArray();
+			java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+			crc.update(covered);
+			DataOutputStream file = new DataOutputStream(new FileOutputStream(snap));
+			file.writeInt(0x4D444943);  // "MDIC"
+			file.writeInt(3);
+			file.write(covered,0,12);
+			file.writeLong(crc.getValue());
+			file.write(covered,12,covered.length - 12);
+			file.close();
+			RedBlackOrderedDictionary old = new RedBlackOrderedDictionary();
+			if (DictionarySnapshot.load(snap.getPath(),old) != 7) passed = false;
+			ArrayList<MultimediaItem> items = old.get("loon");
+			if (items == null || items.get(0).getType() != AUDIO || !items.get(0).getContent().equals("loon.wav")) passed = false;
+			print(passed,32);
+		}
+		catch (Exception e) {
+			print(false,32);
+		}
+
+	if (alltests || test == 34)
+		// The mutation log replays every durable record once, and stops at a torn tail
+		try {
+			passed = true;
+			File logFile = File.createTempFile("testdict", ".log");
+			logFile.delete();
+			logFile.deleteOnExit();
+			new File(logFile.getPath() + ".snapshot").deleteOnExit();
+
+			Query q = new Query("small.txt",1,logFile.getPath());
+			q.processCommand("add zebra Stripes 1");
+			q.processCommand("add zebra zebra.gif 3");
+			q.processCommand("delete zebra 3");
+			q.processCommand("remove nap");
+			q.processCommand("remove nothing");  // Fails, so nothing is logged
+			q.close();
+
+			RedBlackOrderedDictionary expected = new RedBlackOrderedDictionary();
+			new DictionaryLoader(1).load("small.txt",expected);
+			expected.put("zebra","Stripes",TEXT);
+			expected.remove("nap");
+
+			RedBlackOrderedDictionary replayed = new RedBlackOrderedDictionary();
+			new DictionaryLoader(1).load("small.txt",replayed);
+			MutationLog log = new MutationLog(logFile.getPath(),1);
+			if (log.replay(replayed) != 4 || !sameContents(expected,replayed)) passed = false;
+			log.close();
+
+			// A record cut short by a crash is dropped and cut off the file
+			long good = logFile.length();
+			FileOutputStream tail = new FileOutputStream(logFile,true);
+			tail.write(new byte[] {0, 0, 0, 40, 1, 2, 3});
+			tail.close();
+			replayed = new RedBlackOrderedDictionary();
+			new DictionaryLoader(1).load("small.txt",replayed);
+			log = new MutationLog(logFile.getPath(),1);
+			if (log.replay(replayed) != 4 || !sameContents(expected,replayed) || logFile.length() != good) passed = false;
+
+			// Crash after a compaction saved its snapshot but before the log was emptied:
+			// the snapshot holds the log's generation, so its records are not applied again
+			DictionarySnapshot.save(replayed,logFile.getPath() + ".snapshot",log.getGeneration());
+			log.close();
+			q = new Query("small.txt",1,logFile.getPath());
+			if (!q.processCommand("get zebra").equals("Stripes")) passed = false;
+			q.processCommand("add zebra Stripes2 1");
+			q.close();
+			q = new Query("small.txt",1,logFile.getPath());
+			if (!q.processCommand("get zebra").equals("Stripes\nStripes2")) passed = false;
+			q.close();
+			print(passed,33);
+		}
+		catch (Exception e) {
+			print(false,33);
+		}
+
+	if (alltests || test == 35)
+		// The concurrent dictionary agrees with a red-black tree, alone and with threads writing
+		try {
+			passed = true;
+			ConcurrentOrderedDictionary c = new ConcurrentOrderedDictionary();
+			RedBlackOrderedDictionary t = new RedBlackOrderedDictionary();
+			java.util.Random random = new java.util.Random(11);
+			for (int i = 0; i < 3000; i++) {
+				String k = "k" + random.nextInt(500);
+				if (random.nextInt(3) == 0 && t.get(k) != null) {
+					t.remove(k);
+					c.remove(k);
+				}
+				else {
+					t.put(k,"c" + i,TEXT);
+					c.put(k,"c" + i,TEXT);
+				}
+				String probe = "k" + random.nextInt(500);
+				Data a = t.successor(probe), b = c.successor(probe);
+				if ((a == null) != (b == null) || (a != null && !a.getName().equals(b.getName()))) passed = false;
+				a = t.predecessor(probe);
+				b = c.predecessor(probe);
+				if ((a == null) != (b == null) || (a != null && !a.getName().equals(b.getName()))) passed = false;
+			}
+			if (!sameContents(t,c) || !t.smallest().getName().equals(c.smallest().getName())
+				|| !t.largest().getName().equals(c.largest().getName())) passed = false;
+
+			// Readers never see a wrong answer for keys nobody writes, while two threads write others
+			ConcurrentOrderedDictionary shared = new ConcurrentOrderedDictionary();
+			for (int i = 0; i < 1000; i += 2) shared.put(String.format("s%04d",i),"stable" + i,TEXT);
+			boolean[] wrong = new boolean[1];
+			Thread[] threads = new Thread[4];
+			for (int w = 0; w < 2; w++) {
+				int id = w;
+				threads[w] = new Thread(() -> {
+					for (int i = 0; i < 20000; i++) {
+						String k = String.format("s%04d",2 * (i % 500) + 1) + id;
+						shared.put(k,"x",TEXT);
+						try {
+							shared.remove(k);
+						}
+						catch (DictionaryException e) {
+							wrong[0] = true;
+						}
+					}
+				});
+			}
+			for (int r = 2; r < 4; r++) {
+				threads[r] = new Thread(() -> {
+					for (int i = 0; i < 20000; i++) {
+						int n = 2 * (i % 500);
+						ArrayList<MultimediaItem> items = shared.get(String.format("s%04d",n));
+						if (items == null || !items.get(0).getContent().equals("stable" + n)) wrong[0] = true;
+						if (shared.get(String.format("s%04d",n + 1)) != null) wrong[0] = true;
+					}
+				});
+			}
+			for (Thread th : threads) th.start();
+			for (Thread th : threads) th.join();
+			if (wrong[0] || shared.size() != 500) passed = false;
+
+			Query q = new Query("small.txt",1,null,"concurrent");
+			if (!q.processCommand("next c 3").equals("computer course cube cute")) passed = false;
+			q.close();
+			print(passed,34);
+		}
+		catch (Exception e) {
+			print(false,34);
+		}
+
+	if (alltests || test == 36)
+		// Emptied B+-tree leaves leave the tree, so a sliding window of keys keeps it shallow
+		try {
+			passed = true;
+			BPlusTreeOrderedDictionary b = new BPlusTreeOrderedDictionary();
+			RedBlackOrderedDictionary t = new RedBlackOrderedDictionary();
+			for (int i = 0; i < 20000; i++) {
+				b.put(String.format("k%05d",i),"c",TEXT);
+				t.put(String.format("k%05d",i),"c",TEXT);
+			}
+			int tall = b.height();
+			for (int i = 0; i < 19500; i++) {
+				b.remove(String.format("k%05d",i));
+				t.remove(String.format("k%05d",i));
+			}
+			if (!b.smallest().getName().equals("k19500") || !b.largest().getName().equals("k19999")) passed = false;
+			if (b.height() >= tall || !sameContents(t,b)) passed = false;
+			for (int i = 20000; i < 40000; i++) {     // Add at the back, remove at the front
+				b.put(String.format("k%05d",i),"c",TEXT);
+				t.put(String.format("k%05d",i),"c",TEXT);
+				b.remove(String.format("k%05d",i - 500));
+				t.remove(String.format("k%05d",i - 500));
+				if (i % 5000 == 0 && !sameContents(t,b)) passed = false;
+			}
+			if (!sameContents(t,b) || !b.smallest().getName().equals("k39500")) passed = false;
+			if (b.predecessor("k39500") != null || !b.successor("k39500").getName().equals("k39501")) passed = false;
+			for (int i = 39500; i < 40000; i++) b.remove(String.format("k%05d",i));
+			if (b.size() != 0 || b.smallest() != null || b.largest() != null || b.height() != 1) passed = false;
+			b.put("again","c",TEXT);
+			if (!b.smallest().getName().equals("again")) passed = false;
+			print(passed,35);
+		}
+		catch (Exception e) {
+			print(false,35);
+		}
+
+	if (alltests || test == 37)
+		// Off-heap media are appended in place, keep full int types and survive a snapshot
+		try {
+			passed = true;
+			OffHeapOrderedDictionary o = new OffHeapOrderedDictionary();
+			for (int i = 0; i < 1000; i++) o.put("many","item" + i,(i % 2 == 0) ? TEXT : 1000 + i);
+			if (o.garbageBytes() != 0 || o.get("many").size() != 1000) passed = false;
+			if (!o.get("many").get(999).getContent().equals("item999") || o.get("many").get(999).getType() != 1999) passed = false;
+			o.remove("many",TEXT);
+			if (o.get("many").size() != 500 || o.get("many").get(0).getType() != 1001 || o.garbageBytes() == 0) passed = false;
+			o.put("many","again",-5);
+			if (o.get("many").size() != 501 || o.get("many").get(500).getType() != -5) passed = false;
+
+			File snap = File.createTempFile("testdict", ".snap");
+			snap.deleteOnExit();
+			DictionarySnapshot.save(o,snap.getPath());
+			RedBlackOrderedDictionary t = new RedBlackOrderedDictionary();
+			DictionarySnapshot.load(snap.getPath(),t);
+			if (!sameContents(o,t)) passed = false;
+			o.remove("many");
+			if (o.size() != 0 || o.get("many") != null) passed = false;
+
+			// Churn well past a chunk of garbage; compaction copies the live records over
+			StringBuilder big = new StringBuilder();
+			for (int i = 0; i < 100000; i++) big.append('x');
+			for (int i = 0; i < 50; i++) {
+				o.put(String.format("live%02d",i),"first" + i,1000 + i);
+				o.put(String.format("live%02d",i),"second" + i,TEXT);
+				t.put(String.format("live%02d",i),"first" + i,1000 + i);
+				t.put(String.format("live%02d",i),"second" + i,TEXT);
+			}
+			for (int i = 0; i < 1500; i++) {
+				o.put("churn" + i,big.toString(),TEXT);
+				o.remove("churn" + i);
+			}
+			t.remove("many");
+			if (o.reservedBytes() > 2L << 26 || !sameContents(t,o) || !o.isValid()) passed = false;
+			o.put("live07","third",IMAGE);
+			t.put("live07","third",IMAGE);
+			if (!sameContents(t,o) || o.get("live07").size() != 3) passed = false;
+			print(passed,36);
+		}
+		catch (Exception e) {
+			print(false,36);
+		}
+
+	if (alltests || test == 38)
+		// 'next' and 'prev' with a negative or the largest d, asked twice to go through the range cache
+		try {
+			passed = true;
+			Query q = new Query("small.txt",1);
+			String all = q.processCommand("next c 1000");
+			String last = q.processCommand("prev z 1000");
+			for (int run = 0; run < 2; run++) {
+				if (!q.processCommand("next c " + Integer.MAX_VALUE).equals(all)) passed = false;
+				if (!q.processCommand("next computer -1").equals("computer")) passed = false;
+				if (!q.processCommand("prev computer -1").equals("computer")) passed = false;
+				if (!q.processCommand("prev z " + Integer.MAX_VALUE).equals(last)) passed = false;
+			}
+			if (all.split(" ").length < 10) passed = false;
+			q.close();
+			print(passed,37);
+		}
+		catch (Exception e) {
+			print(false,37);
+		}
+  }
+
+  // True if a and b hold the same keys with the same items, in the same order
+  private static boolean sameContents(OrderedDictionary a, OrderedDictionary b) {
+	if (a.size() != b.size()) return false;
+	ArrayList<Data> x = a.ascendingFrom("",a.size());
+	ArrayList<Data> y = b.ascendingFrom("",b.size());
+	if (x.size() != y.size()) return false;
+	for (int i = 0; i < x.size(); i++) {
+		if (!x.get(i).getName().equals(y.get(i).getName())) return false;
+		ArrayList<MultimediaItem> p = x.get(i).getMedia();
+		ArrayList<MultimediaItem> q = y.get(i).getMedia();
+		if (p.size() != q.size()) return false;
+		for (int j = 0; j < p.size(); j++) {
+			if (!p.get(j).getContent().equals(q.get(j).getContent()) || p.get(j).getType() != q.get(j).getType()) return false;
+		}
+	}
+	return true;
   }
   
   private static void print(boolean testPassed, int test) {